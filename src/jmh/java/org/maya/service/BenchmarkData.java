@@ -0,0 +1,62 @@
+package org.maya.service;
+
+import org.maya.dto.OrderItemRequest;
+import org.maya.dto.OrderRequest;
+import org.maya.model.Item;
+import org.maya.model.Order;
+import org.maya.model.OrderItem;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+/**
+ * Сущности и запросы для замеров, собранные без БД и контейнера.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Item item(long id) {
+        Item item = new Item();
+        item.id = id;
+        item.name = "Товар " + id;
+        item.quantity = 1_000;
+        item.price = 10.0 + id % 100;
+        item.version = 1L;
+        return item;
+    }
+
+    /** Заказ с позициями на товары firstItemId..firstItemId + lines - 1. */
+    static Order order(long id, long firstItemId, int lines) {
+        Order order = new Order();
+        order.id = id;
+        order.orderDate = LocalDateTime.of(2025, 1, 1, 12, 0);
+        order.address = "ул. Тестовая, д. " + id;
+        order.version = 0L;
+        for (int i = 0; i < lines; i++) {
+            OrderItem line = new OrderItem();
+            line.id = id * 10_000 + i;
+            line.item = item(firstItemId + i);
+            line.quantity = 1 + i % 5;
+            line.unitPrice = line.item.price;
+            order.addOrderItem(line);
+        }
+        order.recalculateTotals();
+        return order;
+    }
+
+    /** Запрос на товары firstItemId..firstItemId + lines - 1. */
+    static OrderRequest request(long firstItemId, int lines) {
+        OrderRequest request = new OrderRequest();
+        request.address = "ул. Тестовая, д. 1";
+        request.items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            OrderItemRequest line = new OrderItemRequest();
+            line.itemId = firstItemId + i;
+            line.quantity = 2 + i % 3;
+            request.items.add(line);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,60 @@
+package org.maya.service;
+
+import org.maya.dto.ItemResponseDTO;
+import org.maya.dto.OrderResponseDTO;
+import org.maya.model.Item;
+import org.maya.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderService.mapToDto и ItemService.mapToDto в зависимости от числа позиций заказа.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    /** Заказ параметризуется числом позиций отдельно, чтобы не размножать замер товара. */
+    @State(Scope.Benchmark)
+    public static class OrderState {
+
+        @Param({"1", "10", "100", "1000"})
+        int lines;
+
+        Order order;
+
+        @Setup
+        public void setUp() {
+            order = BenchmarkData.order(1, 1, lines);
+        }
+    }
+
+    private final OrderService orderService = new OrderService();
+    private final ItemService itemService = new ItemService();
+    private final Item item = BenchmarkData.item(1);
+
+    @Benchmark
+    public OrderResponseDTO orderMapToDto(OrderState state) {
+        return orderService.mapToDto(state.order);
+    }
+
+    @Benchmark
+    public ItemResponseDTO itemMapToDto() {
+        return itemService.mapToDto(item);
+    }
+}
@@ -0,0 +1,55 @@
+package org.maya.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск по ItemSearchIndex на каталоге из миллиона названий вида "категория модель-NNNNNN":
+ * частый префикс названия, начало слова, подстрока внутри слова и запрос из двух символов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ItemSearchBenchmark {
+
+    private static final String[] CATEGORIES = {"ноутбук", "телефон", "кабель", "чехол", "зарядка", "монитор",
+            "клавиатура", "мышь", "наушники", "планшет"};
+
+    @Param({"1000000"})
+    int items;
+
+    @Param({"кабель", "модель-0004", "0420", "за"})
+    String query;
+
+    private ItemSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new ItemSearchIndex();
+        Random random = new Random(42);
+        for (long id = 1; id <= items; id++) {
+            index.put(id, CATEGORIES[random.nextInt(CATEGORIES.length)] + " модель-" + String.format("%06d", id));
+        }
+    }
+
+    @Benchmark
+    public List<ItemSearchIndex.Match> search() {
+        return index.search(query, 20);
+    }
+}
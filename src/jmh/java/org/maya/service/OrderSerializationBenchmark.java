@@ -0,0 +1,62 @@
+package org.maya.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.maya.dto.OrderResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация ответа GET /api/orders (список OrderResponseDTO) разного размера.
+ * ObjectMapper настроен как в Quarkus по умолчанию: модули из classpath, даты строками ISO-8601.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderSerializationBenchmark {
+
+    private static final int LINES_PER_ORDER = 5;
+
+    @Param({"1", "100", "1000"})
+    int orders;
+
+    private ObjectWriter writer;
+    private List<OrderResponseDTO> response;
+
+    @Setup
+    public void setUp() {
+        writer = JsonMapper.builder()
+                .findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build()
+                .writerFor(List.class);
+        OrderService orderService = new OrderService();
+        response = new ArrayList<>(orders);
+        for (int i = 1; i <= orders; i++) {
+            response.add(orderService.mapToDto(BenchmarkData.order(i, i, LINES_PER_ORDER)));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeOrders() throws JsonProcessingException {
+        return writer.writeValueAsBytes(response);
+    }
+}
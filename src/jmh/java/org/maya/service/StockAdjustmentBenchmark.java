@@ -0,0 +1,51 @@
+package org.maya.service;
+
+import org.maya.dto.OrderRequest;
+import org.maya.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет дельт склада при обновлении заказа (OrderService.update): старые и новые количества по товарам
+ * и их разница. Новый набор позиций наполовину пересекается со старым.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockAdjustmentBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int lines;
+
+    private Order order;
+    private OrderRequest request;
+
+    @Setup
+    public void setUp() {
+        order = BenchmarkData.order(1, 1, lines);
+        request = BenchmarkData.request(1 + lines / 2, lines);
+    }
+
+    @Benchmark
+    public SortedMap<Long, Integer> updateStockDeltas() {
+        Map<Long, Integer> oldItemQuantities = OrderService.orderedQuantities(order);
+        Map<Long, Integer> newItemQuantities = OrderService.mergeLines(request);
+        return OrderService.computeStockAdjustments(oldItemQuantities, newItemQuantities);
+    }
+}
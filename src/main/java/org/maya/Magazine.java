@@ -1,16 +1,125 @@
 package org.maya;
 
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 @Path("/")
 public class Magazine {
 
+    // Страница собирается и сжимается один раз при загрузке класса; запросы отдают готовые байты
+    private static final byte[] PAGE = page().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAGE_GZIP = gzip(PAGE);
+    // Сильный ETag от содержимого; у каждого представления (кодировки) свой тег
+    private static final EntityTag PAGE_TAG = new EntityTag(digest(PAGE));
+    private static final EntityTag PAGE_GZIP_TAG = new EntityTag(PAGE_TAG.getValue() + "-gz");
+
+    @ConfigProperty(name = "magazine.ui.max-age", defaultValue = "1D")
+    Duration maxAge;
+
     @GET
-    @Produces(MediaType.TEXT_HTML)
-    public String getInventory() {
+    @Produces(MediaType.TEXT_HTML + ";charset=UTF-8")
+    public Response getInventory(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                 @Context Request request) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        EntityTag tag = gzip ? PAGE_GZIP_TAG : PAGE_TAG;
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge((int) maxAge.toSeconds());
+
+        Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder == null) {
+            builder = Response.ok(gzip ? PAGE_GZIP : PAGE);
+            if (gzip) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+        }
+        return builder.tag(tag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    /**
+     * gzip принимается, если он указан в Accept-Encoding без q=0; * учитывается, только когда gzip
+     * не указан явно (gzip;q=0, * - отказ от gzip).
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQ = null;
+        Double anyQ = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzipQ = Math.max(gzipQ == null ? 0 : gzipQ, quality(tokens));
+            } else if (coding.equals("*")) {
+                anyQ = quality(tokens);
+            }
+        }
+        return gzipQ != null ? gzipQ > 0 : anyQ != null && anyQ > 0;
+    }
+
+    private static double quality(String[] tokens) {
+        double q = 1.0;
+        for (int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    q = Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    q = 0;
+                }
+            }
+        }
+        return q;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION); // сжимаем один раз, поэтому не экономим на уровне
+            }
+        }) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String page() {
         return """
 <!DOCTYPE html>
 <html>
@@ -56,6 +165,9 @@ ul { padding-left: 20px; margin: 5px 0; }
 <input type="number" id="itemPrice" placeholder="Цена" step="0.01" min="0" value="0.00">
 <button onclick="addItem()">Добавить товар</button>
 </div>
+<div>
+<input type="search" id="itemSearch" placeholder="Поиск по названию" oninput="onSearchInput()">
+</div>
 <table id="itemsTable">
 <thead>
 <tr><th>Название</th><th>Кол-во</th><th>Цена (€)</th><th>Действия</th></tr>
@@ -86,7 +198,7 @@ ul { padding-left: 20px; margin: 5px 0; }
 <h3>Список созданных заказов</h3>
 <table id="ordersTable">
 <thead>
-<tr><th>Дата</th><th>Адрес</th><th>Товары в заказе</th><th>Действие</th></tr>
+<tr><th>Дата</th><th>Адрес</th><th>Товары в заказе</th><th>Сумма (€)</th><th>Действие</th></tr>
 </thead>
 <tbody><!-- Данные заказов --></tbody>
 </table>
@@ -96,6 +208,8 @@ ul { padding-left: 20px; margin: 5px 0; }
 let items = [];
 let orders = [];
 let currentOrderItems = [];
+let changeToken = null; // позиция в ленте /api/changes, с которой загружены items и orders
+let changeStream = null; // EventSource /api/changes/stream
 
 function showNotification(message, isError = false) {
     const notification = document.getElementById('notification');
@@ -122,14 +236,13 @@ async function getErrorFromBody(response) {
 
 async function loadAllData() {
     try {
-        // Загружаем товары
-        const itemsRes = await fetch('/api/items');
-        const itemsText = await itemsRes.text();
-        // Проверяем, что ответ не пустой и похож на JSON
-        if (!itemsText || itemsText.trim().length === 0 || !itemsText.trim().startsWith('[') && !itemsText.trim().startsWith('{')) {
-             throw new Error("Empty or non-JSON response for items: " + itemsText.substring(0, 50) + "...");
-        }
-         if (!isValidJson(itemsText)) throw new Error("Invalid JSON for items");
+        // Token берется до загрузки: изменения, случившиеся во время нее, придут в следующей синхронизации
+        const tokenRes = await fetch('/api/changes');
+        if (!tokenRes.ok) throw new Error(`HTTP ${tokenRes.status} for changes`);
+        const token = (await tokenRes.json()).token;
+
+        // Загружаем товары постранично
+        const loadedItems = await fetchAllItems();
 
 
         // Загружаем заказы
@@ -142,10 +255,11 @@ async function loadAllData() {
         if (!isValidJson(ordersText)) throw new Error("Invalid JSON for orders");
 
         // Парсим
-        items = JSON.parse(itemsText);
+        items = loadedItems;
         orders = JSON.parse(ordersText);
+        changeToken = token;
 
-        renderItems(items);
+        renderCatalog();
         renderOrders();
         updateItemSelect();
 
@@ -155,6 +269,136 @@ async function loadAllData() {
     }
 }
 
+// Подтягивает только изменившиеся товары и заказы из ленты /api/changes.
+// Если лента ушла вперед (410) или изменений слишком много - перечитываем все.
+async function syncChanges() {
+    if (changeToken === null) {
+        await loadAllData();
+        return;
+    }
+    try {
+        const changedItems = new Set();
+        const changedOrders = new Set();
+        let token = changeToken;
+        let hasMore = true;
+        while (hasMore) {
+            const res = await fetch(`/api/changes?since=${encodeURIComponent(token)}`);
+            if (res.status === 410) {
+                await loadAllData();
+                return;
+            }
+            if (!res.ok) throw new Error(`HTTP ${res.status}`);
+            const feed = await res.json();
+            feed.changes.forEach(c => (c.type === 'item' ? changedItems : changedOrders).add(c.id));
+            token = feed.token;
+            hasMore = feed.hasMore;
+        }
+        if (changedItems.size + changedOrders.size > 200) {
+            await loadAllData();
+            return;
+        }
+        for (const id of changedItems) {
+            items = await patchList(items, `/api/items/${id}`, id);
+        }
+        for (const id of changedOrders) {
+            orders = await patchList(orders, `/api/orders/${id}`, id);
+        }
+        changeToken = token;
+
+        renderCatalog();
+        renderOrders();
+        updateItemSelect();
+    } catch (error) {
+        console.error("Ошибка синхронизации:", error);
+        await loadAllData();
+    }
+}
+
+// Заменяет (404 - удаляет) элемент списка по id
+async function patchList(list, url, id) {
+    const res = await fetch(url);
+    if (res.status === 404) return upsert(list, id, null);
+    if (!res.ok) throw new Error(`HTTP ${res.status} for ${url}`);
+    return upsert(list, id, await res.json());
+}
+
+// fresh = null - удаляет элемент; новые вставляются с сохранением порядка по id
+function upsert(list, id, fresh) {
+    const rest = list.filter(x => x.id !== id);
+    if (fresh === null) return rest;
+    const at = rest.findIndex(x => x.id > id);
+    rest.splice(at === -1 ? rest.length : at, 0, fresh);
+    return rest;
+}
+
+// Поток изменений: таблицы обновляются из событий, без перезагрузки.
+// При (пере)подключении и после resync пропущенное догоняется по ленте /api/changes.
+function connectStream() {
+    if (!window.EventSource) return;
+    changeStream = new EventSource('/api/changes/stream');
+    changeStream.onopen = () => syncChanges();
+    changeStream.addEventListener('item', applyStreamEvent);
+    changeStream.addEventListener('order', applyStreamEvent);
+    changeStream.addEventListener('resync', () => syncChanges());
+}
+
+function applyStreamEvent(event) {
+    const change = JSON.parse(event.data);
+    if (change.type === 'item') {
+        items = upsert(items, change.id, change.action === 'deleted' ? null : change.item);
+    } else {
+        orders = upsert(orders, change.id, change.action === 'deleted' ? null : change.order);
+    }
+    advanceToken(event.lastEventId);
+    scheduleRender();
+}
+
+// Token из события принимается, только если он новее текущего (та же эпоха, больший seq)
+function advanceToken(token) {
+    if (!token || changeToken === null) return;
+    const [epoch, seq] = token.split('-');
+    const [currentEpoch, currentSeq] = changeToken.split('-');
+    if (epoch === currentEpoch && Number(seq) > Number(currentSeq)) changeToken = token;
+}
+
+// Пачка событий перерисовывает таблицы один раз
+let renderTimer = null;
+function scheduleRender() {
+    if (renderTimer !== null) return;
+    renderTimer = setTimeout(() => {
+        renderTimer = null;
+        renderCatalog();
+        renderOrders();
+        updateItemSelect();
+    }, 50);
+}
+
+// После своих изменений: при открытом потоке таблицы обновит он, иначе догоняем ленту сами
+async function refreshAfterChange() {
+    if (changeStream === null || changeStream.readyState !== EventSource.OPEN) {
+        await syncChanges();
+    }
+}
+
+async function fetchAllItems() {
+    const result = [];
+    let cursor = null;
+    do {
+        const url = cursor === null ? '/api/items?limit=500' : `/api/items?limit=500&after=${cursor}`;
+        const itemsRes = await fetch(url);
+        const itemsText = await itemsRes.text();
+        // Проверяем, что ответ не пустой и похож на JSON
+        if (!itemsText || itemsText.trim().length === 0 || !itemsText.trim().startsWith('{')) {
+             throw new Error("Empty or non-JSON response for items: " + itemsText.substring(0, 50) + "...");
+        }
+        if (!isValidJson(itemsText)) throw new Error("Invalid JSON for items");
+        const page = JSON.parse(itemsText);
+        result.push(...page.items);
+        cursor = page.nextCursor;
+    } while (cursor !== null && cursor !== undefined);
+    return result;
+}
+
 function isValidJson(str) {
     try {
         JSON.parse(str);
@@ -165,6 +409,32 @@ function isValidJson(str) {
     }
 }
 
+// Пустой запрос - весь загруженный каталог, иначе - результаты /api/items/search
+let searchTimer = null;
+function onSearchInput() {
+    clearTimeout(searchTimer);
+    searchTimer = setTimeout(renderCatalog, 200);
+}
+
+async function renderCatalog() {
+    const query = document.getElementById('itemSearch').value.trim();
+    if (!query) {
+        renderItems(items);
+        return;
+    }
+    try {
+        const res = await fetch(`/api/items/search?q=${encodeURIComponent(query)}`);
+        if (!res.ok) throw new Error(`HTTP ${res.status}`);
+        const found = await res.json();
+        if (document.getElementById('itemSearch').value.trim() === query) {
+            renderItems(found);
+        }
+    } catch (error) {
+        console.error("Ошибка поиска:", error);
+        showNotification("Ошибка поиска: " + error.message, true);
+    }
+}
+
 function renderItems(itemsList) {
     const tbody = document.querySelector('#itemsTable tbody');
     if (!tbody) return;
@@ -190,14 +460,18 @@ function renderItems(itemsList) {
                              <td>${order.address || 'Не указан'}</td>
                              <td>
                                  <ul>
-                                     ${(order.items || []).map(i => `<li>${i.itemName || '[Неизвестный товар]'} — ${i.quantity} шт.</li>`).join('')}
+                                     ${(order.items || []).map(i => `<li>${i.itemName || '[Неизвестный товар]'} — ${i.quantity} шт.
+                                         <button class="edit-btn" onclick="editOrderLine(${order.id}, ${i.itemId}, ${i.quantity})">✎</button>
+                                         <button class="delete-btn" onclick="deleteOrderLine(${order.id}, ${i.itemId})">×</button></li>`).join('')}
                                  </ul>
                              </td>
+                             <td>${(order.totalAmount || 0).toFixed(2)}</td>
                              <td>
+                                 <button class="edit-btn" onclick="editOrderAddress(${order.id})">Адрес</button>
                                  <button class="delete-btn" onclick="deleteOrder(${order.id})">Удалить</button>
                              </td>
                          </tr>
-                     `).join('') : '<tr><td colspan="4">Нет заказов</td></tr>';
+                     `).join('') : '<tr><td colspan="5">Нет заказов</td></tr>';
                  }
 
 
@@ -227,7 +501,7 @@ async function addItem() {
         document.getElementById('itemName').value = '';
         document.getElementById('itemQuantity').value = '0';
         document.getElementById('itemPrice').value = '0.00';
-        await loadAllData(); // Перезагружаем данные после добавления
+        await refreshAfterChange();
     } catch (e) {
         showNotification("Ошибка добавления товара: " + e.message, true);
          console.error("Add item error:", e); // Добавляем лог в консоль для отладки
@@ -265,14 +539,14 @@ async function editItem(id) {
         const res = await fetch(`/api/items/${id}`, {
             method: 'PUT',
             headers: {'Content-Type': 'application/json'},
-            body: JSON.stringify({name: newName.trim(), quantity: newQty, price: newPrice}) // Обрезаем пробелы у имени
+            body: JSON.stringify({name: newName.trim(), quantity: newQty, price: newPrice, version: item.version}) // Обрезаем пробелы у имени
         });
         if (!res.ok) {
              const errorMsg = await getErrorFromBody(res);
              throw new Error(errorMsg);
         }
         showNotification("Товар обновлен");
-        await loadAllData(); // Перезагружаем данные после обновления
+        await refreshAfterChange();
     } catch (e) {
         showNotification("Ошибка обновления: " + e.message, true);
          console.error("Edit item error:", e); // Добавляем лог в консоль для отладки
@@ -299,7 +573,7 @@ async function deleteItem(id) {
         }
 
         showNotification("Товар удален");
-        await loadAllData(); // Перезагружаем данные после удаления
+        await refreshAfterChange();
     } catch (e) {
         showNotification("Ошибка удаления: " + e.message, true);
          console.error("Delete item error:", e); // Добавляем лог в консоль для отладки
@@ -504,7 +778,7 @@ async function createOrder() {
         currentOrderItems = [];
         updateOrderTable();
         document.getElementById('orderAddress').value = '';
-        await loadAllData(); 
+        await refreshAfterChange();
     } catch (e) {
         console.error("Ошибка при создании заказа:", e);
         showNotification("Ошибка создания заказа: " + e.message, true);
@@ -530,15 +804,61 @@ async function deleteOrder(id) {
          }
 
         showNotification("Заказ удален");
-        await loadAllData(); // Перезагружаем данные (склад и заказы)
+        await refreshAfterChange();
     } catch (e) {
         console.error("Ошибка при удалении заказа:", e);
         showNotification("Ошибка удаления заказа: " + e.message, true);
     }
 }
 
+// Точечные изменения заказа: меняется одна позиция или адрес, остальной заказ не пересылается
+async function orderRequest(url, method, body, successMessage) {
+    try {
+        const res = await fetch(url, {
+            method,
+            headers: body ? {'Content-Type': 'application/json'} : {},
+            body: body ? JSON.stringify(body) : undefined
+        });
+        if (!res.ok) {
+            throw new Error(await getErrorFromBody(res));
+        }
+        showNotification(successMessage);
+        await refreshAfterChange();
+    } catch (e) {
+        console.error("Ошибка изменения заказа:", e);
+        showNotification("Ошибка изменения заказа: " + e.message, true);
+    }
+}
+
+async function editOrderLine(orderId, itemId, quantity) {
+    const qtyStr = prompt("Введите количество", quantity);
+    if (qtyStr === null) return; // Отмена
+    const qty = parseInt(qtyStr);
+    if (isNaN(qty) || qty < 1) {
+        showNotification("Некорректное количество. Должно быть положительным числом.", true);
+        return;
+    }
+    await orderRequest(`/api/orders/${orderId}/items/${itemId}`, 'PUT', {quantity: qty}, "Позиция заказа обновлена");
+}
+
+async function deleteOrderLine(orderId, itemId) {
+    if (!confirm("Убрать товар из заказа?")) return;
+    await orderRequest(`/api/orders/${orderId}/items/${itemId}`, 'DELETE', null, "Товар убран из заказа");
+}
+
+async function editOrderAddress(orderId) {
+    const order = orders.find(o => o.id === orderId);
+    const address = prompt("Введите адрес доставки", order ? order.address : '');
+    if (address === null) return; // Отмена
+    if (!address.trim()) {
+        showNotification("Адрес не может быть пустым", true);
+        return;
+    }
+    await orderRequest(`/api/orders/${orderId}`, 'PATCH', {address: address.trim()}, "Адрес заказа обновлен");
+}
+
 document.addEventListener('DOMContentLoaded', () => {
-    loadAllData();
+    loadAllData().then(connectStream);
     updateOrderTable(); // Инициализируем отображение корзины
 });
 </script>
@@ -0,0 +1,121 @@
+package org.maya.admission;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограничение числа одновременно выполняемых запросов с короткой ограниченной очередью.
+ * С targetLatency лимит подстраивается по схеме AIMD: запрос быстрее цели при занятом лимите
+ * увеличивает его на 1/limit (примерно +1 за "круг" запросов), медленный или перегруженный ответ
+ * уменьшает в BACKOFF раз - не чаще раза на запросы, начатые после прошлого уменьшения.
+ */
+final class AdaptiveLimiter {
+
+    enum Admission {
+        ADMITTED, QUEUE_FULL, TIMEOUT
+    }
+
+    private static final double BACKOFF = 0.9;
+
+    private final int maxQueue;
+    private final int maxLimit;
+    private final long targetNanos; // 0 - лимит постоянный
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long lastDecrease = System.nanoTime();
+
+    AdaptiveLimiter(int limit, int maxLimit, int maxQueue, Duration targetLatency) {
+        this.limit = limit;
+        this.maxLimit = Math.max(limit, maxLimit);
+        this.maxQueue = maxQueue;
+        this.targetNanos = targetLatency == null ? 0 : targetLatency.toNanos();
+    }
+
+    /** Занимает место; если лимит исчерпан - ждет в очереди не дольше timeout. */
+    Admission acquire(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < limit()) {
+                inFlight++;
+                return Admission.ADMITTED;
+            }
+            if (queued >= maxQueue || timeout.isZero()) {
+                return Admission.QUEUE_FULL;
+            }
+            queued++;
+            try {
+                long nanos = timeout.toNanos();
+                while (inFlight >= limit()) {
+                    if (nanos <= 0) {
+                        return Admission.TIMEOUT;
+                    }
+                    nanos = released.awaitNanos(nanos);
+                }
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            return Admission.ADMITTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место запроса, допущенного в startNanos (System.nanoTime());
+     * overloaded - ответ говорит о перегрузке или конфликте блокировок.
+     */
+    void release(long startNanos, boolean overloaded) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            boolean saturated = inFlight * 2 >= limit;
+            inFlight--;
+            if (targetNanos > 0) {
+                if (overloaded || now - startNanos > targetNanos) {
+                    if (startNanos - lastDecrease > 0) {
+                        limit = Math.max(1, limit * BACKOFF);
+                        lastDecrease = now;
+                    }
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.maya.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.maya.admission.AdaptiveLimiter.Admission;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Лимиты одновременных запросов по классам эндпоинтов. Запись заказов, запись товаров и чтение
+ * ограничиваются независимо, поэтому распродажа, занявшая все места записи заказов, не задерживает
+ * чтение каталога: лишние запросы оформления ждут в короткой очереди или сразу получают 429/503.
+ * Лимит записи заказов по умолчанию меньше пула соединений Agroal, чтобы чтению оставались соединения.
+ */
+@ApplicationScoped
+public class AdmissionControl {
+
+    public enum EndpointClass {
+        ORDER_WRITES, ITEM_WRITES, READS;
+
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "magazine.admission.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "magazine.admission.queue-timeout", defaultValue = "2s")
+    Duration queueTimeout;
+
+    @ConfigProperty(name = "magazine.admission.retry-after", defaultValue = "1s")
+    Duration retryAfter;
+
+    @ConfigProperty(name = "magazine.admission.order-writes.limit", defaultValue = "10")
+    int orderWritesLimit;
+
+    @ConfigProperty(name = "magazine.admission.order-writes.max-limit", defaultValue = "16")
+    int orderWritesMaxLimit;
+
+    @ConfigProperty(name = "magazine.admission.order-writes.queue", defaultValue = "50")
+    int orderWritesQueue;
+
+    @ConfigProperty(name = "magazine.admission.order-writes.target-latency")
+    Optional<Duration> orderWritesTargetLatency;
+
+    @ConfigProperty(name = "magazine.admission.item-writes.limit", defaultValue = "4")
+    int itemWritesLimit;
+
+    @ConfigProperty(name = "magazine.admission.item-writes.max-limit", defaultValue = "8")
+    int itemWritesMaxLimit;
+
+    @ConfigProperty(name = "magazine.admission.item-writes.queue", defaultValue = "20")
+    int itemWritesQueue;
+
+    @ConfigProperty(name = "magazine.admission.item-writes.target-latency")
+    Optional<Duration> itemWritesTargetLatency;
+
+    @ConfigProperty(name = "magazine.admission.reads.limit", defaultValue = "100")
+    int readsLimit;
+
+    @ConfigProperty(name = "magazine.admission.reads.max-limit", defaultValue = "200")
+    int readsMaxLimit;
+
+    @ConfigProperty(name = "magazine.admission.reads.queue", defaultValue = "200")
+    int readsQueue;
+
+    @ConfigProperty(name = "magazine.admission.reads.target-latency")
+    Optional<Duration> readsTargetLatency;
+
+    private final Map<EndpointClass, AdaptiveLimiter> limiters = new EnumMap<>(EndpointClass.class);
+
+    @PostConstruct
+    void init() {
+        limiters.put(EndpointClass.ORDER_WRITES, new AdaptiveLimiter(orderWritesLimit, orderWritesMaxLimit,
+                orderWritesQueue, orderWritesTargetLatency.orElse(null)));
+        limiters.put(EndpointClass.ITEM_WRITES, new AdaptiveLimiter(itemWritesLimit, itemWritesMaxLimit,
+                itemWritesQueue, itemWritesTargetLatency.orElse(null)));
+        limiters.put(EndpointClass.READS, new AdaptiveLimiter(readsLimit, readsMaxLimit,
+                readsQueue, readsTargetLatency.orElse(null)));
+        limiters.forEach((endpointClass, limiter) -> {
+            Gauge.builder("magazine.admission.limit", limiter, AdaptiveLimiter::limit)
+                    .description("Текущий лимит одновременных запросов")
+                    .tag("class", endpointClass.tag())
+                    .register(registry);
+            Gauge.builder("magazine.admission.in-flight", limiter, AdaptiveLimiter::inFlight)
+                    .description("Выполняющиеся запросы")
+                    .tag("class", endpointClass.tag())
+                    .register(registry);
+            Gauge.builder("magazine.admission.queued", limiter, AdaptiveLimiter::queued)
+                    .description("Запросы, ожидающие места")
+                    .tag("class", endpointClass.tag())
+                    .register(registry);
+        });
+    }
+
+    /**
+     * Класс запроса или null - не ограничивается: UI, поток изменений (долгое соединение) и диагностика,
+     * которая должна отвечать и под нагрузкой.
+     */
+    EndpointClass classify(String method, String path) {
+        if (!enabled || !path.startsWith("/api/") || path.startsWith("/api/changes/stream")
+                || path.startsWith("/api/diagnostics") || path.startsWith("/api/cache")) {
+            return null;
+        }
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return EndpointClass.READS;
+        }
+        if (path.startsWith("/api/orders")) {
+            return EndpointClass.ORDER_WRITES;
+        }
+        return path.startsWith("/api/items") ? EndpointClass.ITEM_WRITES : null;
+    }
+
+    /** Ждет места не дольше queue-timeout; waitAllowed = false - только свободное место, без очереди. */
+    Admission acquire(EndpointClass endpointClass, boolean waitAllowed) throws InterruptedException {
+        Admission admission = limiters.get(endpointClass).acquire(waitAllowed ? queueTimeout : Duration.ZERO);
+        if (admission != Admission.ADMITTED) {
+            Counter.builder("magazine.admission.rejected")
+                    .description("Запросы, отклоненные из-за перегрузки")
+                    .tag("class", endpointClass.tag())
+                    .tag("reason", admission.name().toLowerCase())
+                    .register(registry)
+                    .increment();
+        }
+        return admission;
+    }
+
+    void release(EndpointClass endpointClass, long startNanos, int status) {
+        // 5xx - сбой или таймаут (в том числе ожидания соединения из пула): признак перегрузки БД
+        limiters.get(endpointClass).release(startNanos, status >= 500);
+    }
+
+    /** Значение Retry-After в секундах. */
+    long retryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,74 @@
+package org.maya.admission;
+
+import io.vertx.core.Context;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import org.jboss.logging.Logger;
+import org.maya.admission.AdaptiveLimiter.Admission;
+import org.maya.admission.AdmissionControl.EndpointClass;
+
+/**
+ * Допуск запросов по лимитам AdmissionControl до вызова ресурса. Очередь переполнена - 429,
+ * место не освободилось за queue-timeout - 503; оба ответа с Retry-After. Место освобождается
+ * после ответа, время ответа подстраивает адаптивный лимит.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100) // раньше остальных фильтров: отказ не должен стоить работы
+public class AdmissionFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String CLASS_PROPERTY = AdmissionFilter.class.getName() + ".class";
+    private static final String START_PROPERTY = AdmissionFilter.class.getName() + ".start";
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    AdmissionControl admissionControl;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        String path = request.getUriInfo().getPath();
+        EndpointClass endpointClass = admissionControl.classify(request.getMethod(), path.startsWith("/") ? path : "/" + path);
+        if (endpointClass == null) {
+            return;
+        }
+        Admission admission;
+        try {
+            // На event loop ждать нельзя: там только свободное место или отказ
+            admission = admissionControl.acquire(endpointClass, !Context.isOnEventLoopThread());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admission = Admission.TIMEOUT;
+        }
+        if (admission == Admission.ADMITTED) {
+            request.setProperty(CLASS_PROPERTY, endpointClass);
+            request.setProperty(START_PROPERTY, System.nanoTime());
+            return;
+        }
+        logger.debugf("Request %s %s rejected by admission control (%s): %s",
+                request.getMethod(), request.getUriInfo().getPath(), endpointClass, admission);
+        boolean queueFull = admission == Admission.QUEUE_FULL;
+        request.abortWith(Response.status(queueFull ? Response.Status.TOO_MANY_REQUESTS : Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, admissionControl.retryAfterSeconds())
+                .entity(queueFull
+                        ? "{\"error\":\"Too many requests, please retry later\"}"
+                        : "{\"error\":\"Server is overloaded, please retry later\"}")
+                .build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        if (request.getProperty(CLASS_PROPERTY) instanceof EndpointClass endpointClass) {
+            request.removeProperty(CLASS_PROPERTY);
+            admissionControl.release(endpointClass, (Long) request.getProperty(START_PROPERTY), response.getStatus());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.maya.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.maya.service.ItemCache;
+
+@Path("/api/cache")
+@Produces(MediaType.APPLICATION_JSON)
+public class CacheController {
+
+    @Inject
+    ItemCache itemCache;
+
+    @GET
+    @Path("/stats")
+    public Response stats() {
+        return Response.ok(itemCache.stats()).build();
+    }
+}
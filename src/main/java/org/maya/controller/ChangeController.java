@@ -0,0 +1,53 @@
+package org.maya.controller;
+
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.jboss.logging.Logger;
+import org.maya.service.ChangeFeed;
+import org.maya.service.ChangeStream;
+
+@Path("/api/changes")
+@Produces(MediaType.APPLICATION_JSON)
+@RunOnVirtualThread
+public class ChangeController {
+
+    @Inject
+    ChangeFeed changeFeed;
+
+    @Inject
+    ChangeStream changeStream;
+
+    @Inject
+    Logger logger;
+
+    /**
+     * Изменения товаров и заказов после token since (из предыдущего ответа) в порядке seq.
+     * Без since возвращает текущий token; 410 Gone с "resync": true - данные нужно перечитать целиком.
+     */
+    @GET
+    public Response changes(@QueryParam("since") String since, @QueryParam("limit") Integer limit) {
+        logger.debugf("Received GET request for /api/changes (since=%s, limit=%s)", since, limit);
+        return changeFeed.changesSince(since, limit);
+    }
+
+    /**
+     * Поток изменений (Server-Sent Events) после коммита: события item и order с состоянием сущности,
+     * id события - token ленты. Событие resync - часть изменений пропущена, их нужно догнать по ленте.
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void stream(@Context SseEventSink sink, @Context Sse sse) {
+        logger.debug("Received GET request for /api/changes/stream");
+        changeStream.subscribe(sink, sse);
+    }
+}
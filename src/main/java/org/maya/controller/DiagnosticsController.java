@@ -0,0 +1,23 @@
+package org.maya.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.maya.diagnostics.PinningMonitor;
+
+@Path("/api/diagnostics")
+@Produces(MediaType.APPLICATION_JSON)
+public class DiagnosticsController {
+
+    @Inject
+    PinningMonitor pinningMonitor;
+
+    @GET
+    @Path("/pinning")
+    public Response pinning() {
+        return Response.ok(pinningMonitor.stats()).build();
+    }
+}
@@ -0,0 +1,20 @@
+package org.maya.controller;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
+
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Добавляет ETag к успешному ответу; ошибки не кэшируются клиентом.
+     */
+    static Response tagged(Response response, EntityTag tag) {
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            return response;
+        }
+        return Response.fromResponse(response).tag(tag).build();
+    }
+}
@@ -1,48 +1,106 @@
 package org.maya.controller;
 
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
 import org.jboss.logging.Logger;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.maya.model.Item;
+import org.maya.service.CatalogVersion;
+import org.maya.service.ItemImportService;
 import org.maya.service.ItemService;
 
+import java.io.InputStream;
+
 @Path("/api/items")
 @Produces(MediaType.APPLICATION_JSON)
+@RunOnVirtualThread // при quarkus.virtual-threads.enabled=false методы выполняются в пуле worker-потоков
 public class ItemController {
 
     @Inject
     ItemService itemService;
 
+    @Inject
+    ItemImportService itemImportService;
+
+    @Inject
+    CatalogVersion catalogVersion;
+
     @Inject
     Logger logger;
 
     @GET
-    public Response getAll() {
-        logger.info("Received GET request for /api/items");
-        return itemService.getAll();
+    public Response getAll(@QueryParam("after") Long after,
+                           @QueryParam("limit") Integer limit,
+                           @QueryParam("all") @DefaultValue("false") boolean all,
+                           @Context Request request) {
+        logger.debugf("Received GET request for /api/items (after=%s, limit=%s, all=%s)", after, limit, (Object) all);
+        // Тег берется до чтения данных: если каталог изменится между ними, клиент просто получит 200 еще раз
+        EntityTag tag = catalogVersion.itemsTag();
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return ETags.tagged(all ? itemService.getAll() : itemService.getPage(after, limit), tag);
+    }
+
+    @GET
+    @Path("/search")
+    public Response search(@QueryParam("q") String query,
+                           @QueryParam("limit") Integer limit,
+                           @Context Request request) {
+        logger.debugf("Received GET request for /api/items/search (q=%s, limit=%s)", query, limit);
+        EntityTag tag = catalogVersion.itemsTag();
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return ETags.tagged(itemService.search(query, limit), tag);
+    }
+
+    @GET
+    @Path("/{id}")
+    public Response getById(@PathParam("id") Long id, @Context Request request) {
+        logger.debugf("Received GET request for item ID: %d", id);
+        EntityTag tag = catalogVersion.itemsTag();
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return ETags.tagged(itemService.getById(id), tag);
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     public Response create(Item item) {
-        logger.infof("Received POST request to create item: %s", item != null ? item.name : "null");
+        logger.debugf("Received POST request to create item: %s", item != null ? item.name : "null");
         return itemService.create(item);
     }
 
+    @POST
+    @Path("/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson"})
+    public Response bulkCreate(InputStream body) {
+        logger.debug("Received POST request for /api/items/bulk");
+        return itemImportService.importItems(body);
+    }
+
     @PUT
     @Path("/{id}")
     @Consumes(MediaType.APPLICATION_JSON)
     public Response update(@PathParam("id") Long id, Item item) {
-        logger.infof("Received PUT request to update item ID: %d", id);
+        logger.debugf("Received PUT request to update item ID: %d", id);
         return itemService.update(id, item);
     }
 
     @DELETE
     @Path("/{id}")
     public Response delete(@PathParam("id") Long id) {
-        logger.infof("Received DELETE request for item ID: %d", id);
+        logger.debugf("Received DELETE request for item ID: %d", id);
         return itemService.delete(id);
     }
 }
@@ -1,55 +1,143 @@
 package org.maya.controller;
 
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
 import org.jboss.logging.Logger;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import org.maya.dto.OrderLineRequest;
+import org.maya.dto.OrderPatchRequest;
 import org.maya.dto.OrderRequest;
+import org.maya.dto.OrderResponseDTO;
+import org.maya.service.CatalogVersion;
+import org.maya.service.IdempotencyStore;
 import org.maya.service.OrderService;
 
+import java.util.List;
+
 @Path("/api/orders")
 @Produces(MediaType.APPLICATION_JSON)
+@RunOnVirtualThread // при quarkus.virtual-threads.enabled=false методы выполняются в пуле worker-потоков
 public class OrderController {
 
     @Inject
     OrderService orderService;
 
+    @Inject
+    CatalogVersion catalogVersion;
+
+    @Inject
+    IdempotencyStore idempotencyStore;
+
     @Inject
     Logger logger;
 
     @GET
-    public Response getAllOrders() {
-        logger.info("Received GET request for /api/orders");
-        return orderService.getAll();
+    public Response getAllOrders(@Context Request request) {
+        logger.debug("Received GET request for /api/orders");
+        EntityTag tag = catalogVersion.ordersTag();
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return ETags.tagged(orderService.getAll(), tag);
+    }
+
+    /**
+     * Сводки заказов (итоги без позиций) с keyset-пагинацией ?after=<id>&limit=<n>.
+     */
+    @GET
+    @Path("/summary")
+    public Response getSummaries(@QueryParam("after") Long after,
+                                 @QueryParam("limit") Integer limit,
+                                 @Context Request request) {
+        logger.debugf("Received GET request for /api/orders/summary (after=%s, limit=%s)", after, limit);
+        EntityTag tag = catalogVersion.ordersTag();
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return ETags.tagged(orderService.getSummaries(after, limit), tag);
     }
 
     @GET
     @Path("/{id}")
-    public Response getById(@PathParam("id") Long id) {
-        logger.infof("Received GET request for order ID: %d", id);
-        return orderService.getById(id);
+    public Response getById(@PathParam("id") Long id,
+                            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                            @Context Request request) {
+        logger.debugf("Received GET request for order ID: %d", id);
+        // Только при условном запросе сначала читаем версию легким запросом - заказ с позициями грузится лишь при 200
+        if (ifNoneMatch != null) {
+            Long version = orderService.versionOf(id);
+            if (version != null) {
+                Response.ResponseBuilder notModified = request.evaluatePreconditions(catalogVersion.orderTag(id, version));
+                if (notModified != null) {
+                    return notModified.build();
+                }
+            }
+        }
+        Response response = orderService.getById(id);
+        if (response.getEntity() instanceof OrderResponseDTO order) {
+            return ETags.tagged(response, catalogVersion.orderTag(id, order.version));
+        }
+        return response;
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response create(@HeaderParam(IdempotencyStore.HEADER) String idempotencyKey, OrderRequest request) {
+        logger.debugf("Received POST request to create order for address: %s", request != null ? request.address : "null");
+        return idempotencyStore.execute(idempotencyKey, "POST /api/orders", request, claim -> orderService.create(request, claim));
     }
 
     @POST
+    @Path("/batch")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response create(OrderRequest request) {
-        logger.infof("Received POST request to create order for address: %s", request != null ? request.address : "null");
-        return orderService.create(request);
+    public Response createBatch(@HeaderParam(IdempotencyStore.HEADER) String idempotencyKey, List<OrderRequest> requests) {
+        logger.debugf("Received POST request to create order batch of %d orders", requests != null ? requests.size() : 0);
+        return idempotencyStore.execute(idempotencyKey, "POST /api/orders/batch", requests, claim -> orderService.createBatch(requests, claim));
     }
 
     @PUT
     @Path("/{id}")
     @Consumes(MediaType.APPLICATION_JSON)
     public Response update(@PathParam("id") Long id, OrderRequest request) {
-        logger.infof("Received PUT request to update order ID: %d", id);
+        logger.debugf("Received PUT request to update order ID: %d", id);
         return orderService.update(id, request);
     }
 
+    @PATCH
+    @Path("/{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response patch(@PathParam("id") Long id, OrderPatchRequest request) {
+        logger.debugf("Received PATCH request to update address of order ID: %d", id);
+        return orderService.updateAddress(id, request);
+    }
+
+    @PUT
+    @Path("/{id}/items/{itemId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response updateLine(@PathParam("id") Long id, @PathParam("itemId") Long itemId, OrderLineRequest request) {
+        logger.debugf("Received PUT request to set quantity of item %d in order ID: %d", itemId, id);
+        return orderService.updateLine(id, itemId, request);
+    }
+
+    @DELETE
+    @Path("/{id}/items/{itemId}")
+    public Response deleteLine(@PathParam("id") Long id, @PathParam("itemId") Long itemId) {
+        logger.debugf("Received DELETE request for item %d in order ID: %d", itemId, id);
+        return orderService.deleteLine(id, itemId);
+    }
+
     @DELETE
     @Path("/{id}")
     public Response delete(@PathParam("id") Long id) {
-        logger.infof("Received DELETE request for order ID: %d", id);
+        logger.debugf("Received DELETE request for order ID: %d", id);
         return orderService.delete(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package org.maya.controller;
+
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.jboss.logging.Logger;
+import org.maya.service.ReportService;
+
+@Path("/api/reports")
+@Produces(MediaType.APPLICATION_JSON)
+@RunOnVirtualThread
+public class ReportController {
+
+    @Inject
+    ReportService reportService;
+
+    @Inject
+    Logger logger;
+
+    /**
+     * Продажи за период [from, to] (даты ISO, включительно; по умолчанию - последние magazine.reports.default-days дней),
+     * сгруппированные по товарам (groupBy=item, по умолчанию) или по дням (groupBy=day).
+     */
+    @GET
+    @Path("/sales")
+    public Response sales(@QueryParam("from") String from,
+                          @QueryParam("to") String to,
+                          @QueryParam("groupBy") String groupBy) {
+        logger.debugf("Received GET request for /api/reports/sales (from=%s, to=%s, groupBy=%s)", from, to, groupBy);
+        return reportService.sales(from, to, groupBy);
+    }
+}
@@ -0,0 +1,28 @@
+package org.maya.diagnostics;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.hibernate.Interceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Считает сущности, собранные из результатов запросов: ближайшая к "строкам" величина,
+ * которую Hibernate отдает без обертки над JDBC-драйвером.
+ */
+@ApplicationScoped
+@PersistenceUnitExtension
+public class EntityLoadCounter implements Interceptor {
+
+    @Inject
+    RequestSqlStats stats;
+
+    @Override
+    public boolean onLoad(Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+        if (Arc.container().requestContext().isActive()) {
+            stats.entityLoaded();
+        }
+        return false;
+    }
+}
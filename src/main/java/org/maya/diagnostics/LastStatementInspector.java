@@ -0,0 +1,36 @@
+package org.maya.diagnostics;
+
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Запоминает SQL последнего подготовленного выражения в потоке, чтобы StatementCountingListener
+ * мог записать его в лог медленных запросов. Сам SQL не меняет.
+ */
+@ApplicationScoped
+@PersistenceUnitExtension
+public class LastStatementInspector implements StatementInspector {
+
+    private static final ThreadLocal<String> LAST_SQL = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        LAST_SQL.set(sql);
+        return sql;
+    }
+
+    /** Для JDBC-батча - SQL последнего добавленного в него выражения. */
+    static String lastSql() {
+        return LAST_SQL.get();
+    }
+
+    /** Выборка из последовательности id: "next value for" в H2, nextval(...) в PostgreSQL. */
+    static boolean isIdFetch(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        String lower = sql.toLowerCase();
+        return lower.contains("next value for") || lower.contains("nextval(");
+    }
+}
@@ -0,0 +1,138 @@
+package org.maya.diagnostics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Следит за событиями JFR jdk.VirtualThreadPinned: виртуальный поток заблокировался, не отпустив поток-носитель
+ * (synchronized, native-кадр). Считает события по месту возникновения и пишет первое из каждого места в лог.
+ */
+@ApplicationScoped
+public class PinningMonitor {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "quarkus.virtual-threads.enabled", defaultValue = "true")
+    boolean virtualThreadsEnabled;
+
+    @ConfigProperty(name = "magazine.diagnostics.pinning.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "magazine.diagnostics.pinning.threshold", defaultValue = "20ms")
+    Duration threshold;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final Map<String, LongAdder> bySite = new ConcurrentHashMap<>();
+    private volatile RecordingStream stream;
+
+    void onStart(@Observes StartupEvent event) {
+        FunctionCounter.builder("magazine.virtual_threads.pinned", this, PinningMonitor::pinnedCount)
+                .description("Закрепления виртуальных потоков дольше порога (JFR jdk.VirtualThreadPinned)")
+                .register(registry);
+        if (!enabled || !virtualThreadsEnabled) {
+            return;
+        }
+        RecordingStream recording = new RecordingStream();
+        recording.enable(EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(EVENT, this::onPinned);
+        recording.startAsync();
+        stream = recording;
+        logger.infof("Virtual thread pinning monitor started (threshold %d ms)", threshold.toMillis());
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        RecordingStream recording = stream;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        events.increment();
+        pinnedNanos.add(event.getDuration().toNanos());
+        String site = site(event.getStackTrace());
+        LongAdder counter = bySite.computeIfAbsent(site, key -> new LongAdder());
+        counter.increment();
+        if (counter.sum() == 1) {
+            logger.warnf("Virtual thread pinned for %d ms at %s%n%s",
+                    event.getDuration().toMillis(), site, describe(event.getStackTrace()));
+        }
+    }
+
+    /**
+     * Место закрепления - первый кадр приложения, иначе первый кадр вне JDK.
+     */
+    private static String site(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        String fallback = null;
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith("org.maya.")) {
+                return format(frame);
+            }
+            if (fallback == null && !type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                fallback = format(frame);
+            }
+        }
+        return fallback != null ? fallback : "jdk";
+    }
+
+    private static String describe(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "";
+        }
+        return stackTrace.getFrames().stream()
+                .limit(25)
+                .map(frame -> "\tat " + format(frame))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    public long pinnedCount() {
+        return events.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("monitoring", stream != null);
+        result.put("thresholdMs", threshold.toMillis());
+        result.put("events", events.sum());
+        result.put("pinnedMs", pinnedNanos.sum() / 1_000_000);
+        Map<String, Long> sites = new LinkedHashMap<>();
+        bySite.entrySet().stream()
+                .sorted(Map.Entry.<String, LongAdder>comparingByValue((a, b) -> Long.compare(b.sum(), a.sum())))
+                .forEach(entry -> sites.put(entry.getKey(), entry.getValue().sum()));
+        result.put("sites", sites);
+        return result;
+    }
+}
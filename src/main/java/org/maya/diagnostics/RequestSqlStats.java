@@ -0,0 +1,68 @@
+package org.maya.diagnostics;
+
+import jakarta.enterprise.context.RequestScoped;
+
+/**
+ * SQL-статистика текущего HTTP-запроса: подготовленные выражения, JDBC-батчи, время выполнения в драйвере
+ * и число загруженных сущностей. Наполняется StatementCountingListener и EntityLoadCounter.
+ * Эндпоинт выставляет SqlBudgetFilter до вызова ресурса - для лога медленных запросов.
+ */
+@RequestScoped
+public class RequestSqlStats {
+
+    private int statements;
+    private int idFetches;
+    private int batches;
+    private long jdbcNanos;
+    private int entitiesLoaded;
+    private String endpoint;
+
+    void statementPrepared() {
+        statements++;
+    }
+
+    void idFetched() {
+        idFetches++;
+    }
+
+    void batchExecuted() {
+        batches++;
+    }
+
+    void jdbcTime(long nanos) {
+        jdbcNanos += nanos;
+    }
+
+    void entityLoaded() {
+        entitiesLoaded++;
+    }
+
+    void endpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public int statements() {
+        return statements;
+    }
+
+    /** Выборки следующего блока id из последовательности (одна на allocationSize вставок); входят в statements. */
+    public int idFetches() {
+        return idFetches;
+    }
+
+    public int batches() {
+        return batches;
+    }
+
+    public long jdbcNanos() {
+        return jdbcNanos;
+    }
+
+    public int entitiesLoaded() {
+        return entitiesLoaded;
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,57 @@
+package org.maya.diagnostics;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
+import io.quarkus.arc.Unremovable;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Лог медленных SQL-выражений вместо постоянного логирования всего SQL: выражения дольше
+ * magazine.sql.slow-query.threshold пишутся с WARN, остальные - с INFO в доле magazine.sql.log.sample-rate.
+ * В запись попадает эндпоинт текущего HTTP-запроса (его выставляет SqlBudgetFilter).
+ */
+@ApplicationScoped
+@Unremovable // берется через Arc из StatementCountingListener, которого создает Hibernate
+public class SlowQueryLog {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    RequestSqlStats stats;
+
+    @ConfigProperty(name = "magazine.sql.slow-query.threshold", defaultValue = "100ms")
+    Duration threshold;
+
+    @ConfigProperty(name = "magazine.sql.log.sample-rate", defaultValue = "0")
+    double sampleRate;
+
+    void executed(String sql, long nanos, boolean batch) {
+        boolean slow = nanos >= threshold.toNanos();
+        if (!slow && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        String kind = batch ? "batch" : "statement";
+        String endpoint = currentEndpoint();
+        if (slow) {
+            logger.warnf("Slow SQL %s took %.1f ms (threshold %d ms) in %s: %s",
+                    kind, nanos / 1e6, threshold.toMillis(), endpoint, sql);
+        } else {
+            logger.infof("Sampled SQL %s took %.1f ms in %s: %s", kind, nanos / 1e6, endpoint, sql);
+        }
+    }
+
+    private String currentEndpoint() {
+        ArcContainer container = Arc.container();
+        if (container == null || !container.requestContext().isActive() || stats.endpoint() == null) {
+            return "background";
+        }
+        return stats.endpoint();
+    }
+}
@@ -0,0 +1,105 @@
+package org.maya.diagnostics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.arc.Arc;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Итог SQL-статистики запроса: заголовки X-SQL-* (dev/test), метрики по эндпоинтам (prod)
+ * и предупреждение в лог при превышении бюджета выражений. До вызова ресурса запоминает эндпоинт
+ * для записей SlowQueryLog.
+ */
+@Provider
+public class SqlBudgetFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+    public static final String ID_FETCHES_HEADER = "X-SQL-Id-Fetches";
+    public static final String BATCHES_HEADER = "X-SQL-Batches";
+    public static final String JDBC_TIME_HEADER = "X-SQL-Time-Ms";
+    public static final String ENTITIES_HEADER = "X-SQL-Entities";
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    RequestSqlStats stats;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @ConfigProperty(name = "magazine.sql.budget.headers", defaultValue = "false")
+    boolean headers;
+
+    @ConfigProperty(name = "magazine.sql.budget.metrics", defaultValue = "true")
+    boolean metrics;
+
+    @ConfigProperty(name = "magazine.sql.budget.max-statements", defaultValue = "50")
+    int maxStatements;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        Method method = resourceInfo.getResourceMethod();
+        if (method != null && Arc.container().requestContext().isActive()) {
+            stats.endpoint(request.getMethod() + " " + request.getUriInfo().getPath()
+                    + " (" + method.getDeclaringClass().getSimpleName() + "." + method.getName() + ")");
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null || !Arc.container().requestContext().isActive()) {
+            return;
+        }
+        String endpoint = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        int statements = stats.statements();
+        long jdbcNanos = stats.jdbcNanos();
+
+        if (headers) {
+            response.getHeaders().putSingle(STATEMENTS_HEADER, statements);
+            response.getHeaders().putSingle(ID_FETCHES_HEADER, stats.idFetches());
+            response.getHeaders().putSingle(BATCHES_HEADER, stats.batches());
+            response.getHeaders().putSingle(JDBC_TIME_HEADER, String.format("%.3f", jdbcNanos / 1e6));
+            response.getHeaders().putSingle(ENTITIES_HEADER, stats.entitiesLoaded());
+        }
+        if (metrics) {
+            DistributionSummary.builder("magazine.sql.statements")
+                    .description("SQL-выражений на HTTP-запрос")
+                    .tag("endpoint", endpoint)
+                    .serviceLevelObjectives(1, 2, 5, 10, 20, 50, 100)
+                    .register(registry)
+                    .record(statements);
+            DistributionSummary.builder("magazine.sql.entities")
+                    .description("Загруженных сущностей на HTTP-запрос")
+                    .tag("endpoint", endpoint)
+                    .register(registry)
+                    .record(stats.entitiesLoaded());
+            Timer.builder("magazine.sql.time")
+                    .description("Время выполнения SQL в JDBC на HTTP-запрос")
+                    .tag("endpoint", endpoint)
+                    .register(registry)
+                    .record(jdbcNanos, TimeUnit.NANOSECONDS);
+        }
+        if (statements > maxStatements) {
+            logger.warnf("SQL statement budget exceeded by %s %s (%s): %d statements, budget %d",
+                    request.getMethod(), request.getUriInfo().getPath(), endpoint, statements, maxStatements);
+        }
+    }
+}
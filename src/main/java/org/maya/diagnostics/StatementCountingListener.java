@@ -0,0 +1,83 @@
+package org.maya.diagnostics;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
+import org.hibernate.SessionEventListener;
+
+/**
+ * Подключается к каждой сессии Hibernate через hibernate.session.events.auto и переносит счетчики JDBC
+ * в RequestSqlStats текущего запроса. Вне HTTP-запроса (фоновые задачи, старт) ничего не считает.
+ * Время каждого выражения передается в SlowQueryLog - и в запросе, и вне его.
+ * SQL, выполняемый напрямую через Connection (Session.doWork), Hibernate не видит: собственный JDBC
+ * готовится через JdbcCoordinator сессии (см. StockUpdater).
+ */
+public class StatementCountingListener implements SessionEventListener {
+
+    private transient RequestSqlStats stats;
+    private transient SlowQueryLog slowQueryLog;
+    private long executeStart;
+
+    private RequestSqlStats stats() {
+        ArcContainer container = Arc.container();
+        if (container == null || !container.requestContext().isActive()) {
+            return null;
+        }
+        if (stats == null) {
+            stats = container.instance(RequestSqlStats.class).get(); // клиентский прокси - сам находит текущий запрос
+        }
+        return stats;
+    }
+
+    private void logTiming(long nanos, boolean batch) {
+        if (slowQueryLog == null) {
+            ArcContainer container = Arc.container();
+            if (container == null) {
+                return;
+            }
+            slowQueryLog = container.instance(SlowQueryLog.class).get();
+        }
+        slowQueryLog.executed(LastStatementInspector.lastSql(), nanos, batch);
+    }
+
+    @Override
+    public void jdbcPrepareStatementEnd() {
+        RequestSqlStats current = stats();
+        if (current != null) {
+            current.statementPrepared();
+            if (LastStatementInspector.isIdFetch(LastStatementInspector.lastSql())) {
+                current.idFetched();
+            }
+        }
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        long nanos = System.nanoTime() - executeStart;
+        RequestSqlStats current = stats();
+        if (current != null) {
+            current.jdbcTime(nanos);
+        }
+        logTiming(nanos, false);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        long nanos = System.nanoTime() - executeStart;
+        RequestSqlStats current = stats();
+        if (current != null) {
+            current.batchExecuted();
+            current.jdbcTime(nanos);
+        }
+        logTiming(nanos, true);
+    }
+}
@@ -0,0 +1,11 @@
+package org.maya.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkImportResultDTO {
+    public int total;
+    public int created;
+    public int failed;
+    public List<BulkImportRowDTO> rows = new ArrayList<>();
+}
@@ -0,0 +1,9 @@
+package org.maya.dto;
+
+public class BulkImportRowDTO {
+    public int row; // номер строки во входном потоке, с 1
+    public String name;
+    public int status; // HTTP-статус, который вернул бы POST /api/items для этой строки
+    public Long id;
+    public String error;
+}
@@ -0,0 +1,17 @@
+package org.maya.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeDTO {
+    public long seq;
+    public String type;   // item или order
+    public long id;
+    public String action; // created, updated, deleted, stock_changed
+    public Instant at;
+    // Только в потоке /api/changes/stream: состояние сущности после изменения (кроме deleted)
+    public ItemResponseDTO item;
+    public OrderResponseDTO order;
+}
@@ -0,0 +1,9 @@
+package org.maya.dto;
+
+import java.util.List;
+
+public class ChangeFeedDTO {
+    public String token;     // передается в следующий запрос как since
+    public List<ChangeDTO> changes;
+    public boolean hasMore;  // изменений больше limit - сразу запросить снова с новым token
+}
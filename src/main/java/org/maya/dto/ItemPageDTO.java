@@ -0,0 +1,8 @@
+package org.maya.dto;
+
+import java.util.List;
+
+public class ItemPageDTO {
+    public List<ItemResponseDTO> items;
+    public Long nextCursor; // id последнего товара страницы, null - страниц больше нет
+}
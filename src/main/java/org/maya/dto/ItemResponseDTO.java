@@ -5,4 +5,5 @@ public class ItemResponseDTO {
     public String name;
     public int quantity;
     public double price;
+    public Long version;
 }
\ No newline at end of file
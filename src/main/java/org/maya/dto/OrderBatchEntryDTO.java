@@ -0,0 +1,8 @@
+package org.maya.dto;
+
+public class OrderBatchEntryDTO {
+    public int index; // позиция заказа в пакете, с 0
+    public int status; // HTTP-статус, который вернул бы POST /api/orders для этого заказа
+    public OrderResponseDTO order;
+    public String error;
+}
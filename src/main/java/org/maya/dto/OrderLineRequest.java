@@ -0,0 +1,10 @@
+package org.maya.dto;
+
+import jakarta.validation.constraints.*;
+
+/** Тело PUT /api/orders/{id}/items/{itemId}: новое количество товара в заказе. */
+public class OrderLineRequest {
+    @NotNull(message = "Количество обязательно")
+    @Min(value = 1, message = "Количество должно быть не меньше 1")
+    public Integer quantity;
+}
@@ -0,0 +1,10 @@
+package org.maya.dto;
+
+import jakarta.validation.constraints.*;
+
+/** Тело PATCH /api/orders/{id}: меняется только адрес, позиции не трогаются. */
+public class OrderPatchRequest {
+    @NotBlank(message = "Адрес доставки не может быть пустым")
+    @Size(max = 500, message = "Адрес слишком длинный")
+    public String address;
+}
@@ -8,7 +8,8 @@ public class OrderRequest {
 
     @Size(min = 1, message = "Заказ должен содержать хотя бы один товар")
     @Valid // Включаем валидацию для элементов списка (OrderItemRequest)
-    public List<OrderItemRequest> items;
+    // null в списке @Valid пропускает, а mergeLines упал бы на нем с NPE
+    public List<@NotNull(message = "Позиция заказа не может быть пустой") OrderItemRequest> items;
 
     @NotBlank(message = "Адрес доставки не может быть пустым") // Добавляем валидацию адреса
     @Size(max = 500, message = "Адрес слишком длинный")
@@ -13,4 +13,7 @@ public class OrderResponseDTO {
     public LocalDateTime orderDate;
     public String address;
     public List<OrderItemResponseDTO> items;
+    public Long version;
+    public double totalAmount; // сумма по ценам на момент заказа
+    public int lineCount;
 }
\ No newline at end of file
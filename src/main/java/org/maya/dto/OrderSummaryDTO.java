@@ -0,0 +1,22 @@
+package org.maya.dto;
+
+import java.time.LocalDateTime;
+
+/** Заказ без позиций - для списков; строится прямо в HQL (select new). */
+public class OrderSummaryDTO {
+    public Long id;
+    public LocalDateTime orderDate;
+    public String address;
+    public double totalAmount;
+    public int lineCount;
+    public Long version;
+
+    public OrderSummaryDTO(Long id, LocalDateTime orderDate, String address, double totalAmount, int lineCount, Long version) {
+        this.id = id;
+        this.orderDate = orderDate;
+        this.address = address;
+        this.totalAmount = totalAmount;
+        this.lineCount = lineCount;
+        this.version = version;
+    }
+}
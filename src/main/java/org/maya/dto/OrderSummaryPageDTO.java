@@ -0,0 +1,8 @@
+package org.maya.dto;
+
+import java.util.List;
+
+public class OrderSummaryPageDTO {
+    public List<OrderSummaryDTO> orders;
+    public Long nextCursor; // id последнего заказа страницы, null - страниц больше нет
+}
@@ -0,0 +1,13 @@
+package org.maya.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class SalesReportDTO {
+    public LocalDate from;
+    public LocalDate to; // включительно
+    public String groupBy; // item | day
+    public long totalUnits;
+    public double totalRevenue;
+    public List<SalesReportRowDTO> rows;
+}
@@ -0,0 +1,15 @@
+package org.maya.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDate;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SalesReportRowDTO {
+    public Long itemId;      // groupBy=item
+    public String itemName;  // groupBy=item
+    public LocalDate day;    // groupBy=day
+    public long units;
+    public double revenue;
+    public long orders;      // заказов, в которые вошел товар / оформленных за день
+}
@@ -0,0 +1,43 @@
+package org.maya.event;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Изменение товаров. Публикуется внутри транзакции; наблюдатели с TransactionPhase.AFTER_SUCCESS
+ * получают его только после коммита.
+ */
+public class ItemsChangedEvent {
+
+    public enum Kind {
+        CREATED,
+        UPDATED,
+        DELETED,
+        STOCK_CHANGED
+    }
+
+    public final Kind kind;
+    public final Set<Long> itemIds;
+    /** Новые названия для CREATED/UPDATED (id -> name); для остальных видов пусто. */
+    public final Map<Long, String> names;
+
+    public ItemsChangedEvent(Kind kind, Set<Long> itemIds) {
+        this.kind = kind;
+        this.itemIds = Set.copyOf(itemIds);
+        this.names = Map.of();
+    }
+
+    public ItemsChangedEvent(Kind kind, Map<Long, String> names) {
+        this.kind = kind;
+        this.itemIds = Set.copyOf(names.keySet());
+        this.names = Map.copyOf(names);
+    }
+
+    public static ItemsChangedEvent of(Kind kind, Long itemId) {
+        return new ItemsChangedEvent(kind, Set.of(itemId));
+    }
+
+    public static ItemsChangedEvent named(Kind kind, Long itemId, String name) {
+        return new ItemsChangedEvent(kind, Map.of(itemId, name));
+    }
+}
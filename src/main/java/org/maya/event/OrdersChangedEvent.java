@@ -0,0 +1,32 @@
+package org.maya.event;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Изменение заказов. Публикуется внутри транзакции, как и ItemsChangedEvent.
+ */
+public class OrdersChangedEvent {
+
+    public enum Kind {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public final Kind kind;
+    public final Set<Long> orderIds;
+    /** Даты (order_date) затронутых заказов - по ним сбрасываются отчеты за закрытые периоды. */
+    public final Set<LocalDate> orderDates;
+
+    public OrdersChangedEvent(Kind kind, Set<Long> orderIds, Set<LocalDate> orderDates) {
+        this.kind = kind;
+        this.orderIds = Set.copyOf(orderIds);
+        this.orderDates = Set.copyOf(orderDates);
+    }
+
+    public static OrdersChangedEvent of(Kind kind, Long orderId, LocalDateTime orderDate) {
+        return new OrdersChangedEvent(kind, Set.of(orderId), Set.of(orderDate.toLocalDate()));
+    }
+}
@@ -0,0 +1,96 @@
+package org.maya.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.model.Item;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Датчики каталога: число товаров, суммарный остаток, товары без остатка и с низким остатком.
+ * Значения берутся из снимка, который пересчитывается одним агрегирующим запросом в фоне -
+ * не чаще refresh-interval и только если каталог менялся. Сбор метрик сам в БД не ходит.
+ */
+@ApplicationScoped
+public class CatalogStats implements MeterBinder {
+
+    record Snapshot(long items, long units, long outOfStock, long lowStock, long takenAt) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @ConfigProperty(name = "magazine.metrics.catalog.refresh-interval", defaultValue = "10s")
+    Duration refreshInterval;
+
+    @ConfigProperty(name = "magazine.metrics.catalog.low-stock-threshold", defaultValue = "5")
+    int lowStockThreshold;
+
+    private volatile Snapshot snapshot = new Snapshot(0, 0, 0, 0, 0);
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "magazine.catalog.items", "Товаров в каталоге", Snapshot::items);
+        gauge(registry, "magazine.catalog.stock.units", "Суммарный остаток по всем товарам", Snapshot::units);
+        gauge(registry, "magazine.catalog.items.out_of_stock", "Товаров с нулевым остатком", Snapshot::outOfStock);
+        Gauge.builder("magazine.catalog.items.low_stock", this, stats -> stats.current().lowStock())
+                .description("Товаров с остатком не выше порога")
+                .tag("threshold", Integer.toString(lowStockThreshold))
+                .register(registry);
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, ToDoubleFunction<Snapshot> value) {
+        Gauge.builder(name, this, stats -> value.applyAsDouble(stats.current()))
+                .description(description)
+                .register(registry);
+    }
+
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) ItemsChangedEvent event) {
+        dirty.set(true);
+    }
+
+    /**
+     * Текущий снимок; устаревший пересчитывается в виртуальном потоке, а сбор метрик получает предыдущее значение.
+     */
+    Snapshot current() {
+        Snapshot current = snapshot;
+        boolean stale = System.currentTimeMillis() - current.takenAt() >= refreshInterval.toMillis();
+        if (stale && dirty.get() && refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("catalog-stats").start(this::refresh);
+        }
+        return current;
+    }
+
+    private void refresh() {
+        try {
+            dirty.set(false); // изменения, закоммиченные во время запроса, снова пометят снимок устаревшим
+            Object[] row = QuarkusTransaction.requiringNew().call(() -> Item.getEntityManager()
+                    .createQuery("select count(i), coalesce(sum(i.quantity), 0),"
+                            + " coalesce(sum(case when i.quantity = 0 then 1 else 0 end), 0),"
+                            + " coalesce(sum(case when i.quantity <= :threshold then 1 else 0 end), 0)"
+                            + " from Item i", Object[].class)
+                    .setParameter("threshold", lowStockThreshold)
+                    .getSingleResult());
+            snapshot = new Snapshot(((Number) row[0]).longValue(), ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(), ((Number) row[3]).longValue(), System.currentTimeMillis());
+        } catch (Exception e) {
+            dirty.set(true);
+            logger.warn("Failed to refresh catalog metrics", e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+}
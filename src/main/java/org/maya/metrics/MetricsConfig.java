@@ -0,0 +1,43 @@
+package org.maya.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Гистограммы времени ответа HTTP-эндпоинтов (http.server.requests, тег uri - шаблон пути):
+ * бакеты для histogram_quantile и явные SLO-границы для алертов по времени оформления заказа.
+ */
+@Singleton
+public class MetricsConfig {
+
+    @ConfigProperty(name = "magazine.metrics.http.slo", defaultValue = "50ms,100ms,250ms,500ms,1s,2s")
+    List<Duration> slo;
+
+    @Produces
+    @Singleton
+    MeterFilter httpServerHistograms() {
+        double[] boundaries = slo.stream().mapToDouble(Duration::toNanos).toArray();
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals("http.server.requests")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                        .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos())
+                        .serviceLevelObjectives(boundaries)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
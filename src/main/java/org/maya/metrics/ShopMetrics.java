@@ -0,0 +1,79 @@
+package org.maya.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Бизнес-счетчики магазина: исходы операций с заказами, конфликты (409) по товарам, повторы транзакций.
+ * Экспортируются вместе с остальными метриками на /q/metrics.
+ */
+@ApplicationScoped
+public class ShopMetrics {
+
+    public enum OrderOperation {
+        CREATE, BATCH, UPDATE, DELETE, UPDATE_LINE, DELETE_LINE, UPDATE_ADDRESS
+    }
+
+    public enum OrderOutcome {
+        CREATED, UPDATED, DELETED, OUT_OF_STOCK, ITEM_NOT_FOUND, ORDER_NOT_FOUND, LINE_NOT_FOUND, INVALID, CONFLICT, ERROR
+    }
+
+    public enum ItemConflict {
+        /** товар с таким именем уже есть */
+        NAME,
+        /** клиент прислал устаревшую version */
+        VERSION,
+        /** параллельное изменение не удалось разрешить повторами */
+        CONCURRENT,
+        /** удаление товара, который есть в заказах */
+        IN_USE
+    }
+
+    @Inject
+    MeterRegistry registry;
+
+    public void orderOutcome(OrderOperation operation, OrderOutcome outcome) {
+        orderOutcome(operation, outcome, 1);
+    }
+
+    public void orderOutcome(OrderOperation operation, OrderOutcome outcome, int count) {
+        if (count == 0) {
+            return;
+        }
+        Counter.builder("magazine.orders")
+                .description("Исходы операций с заказами")
+                .tag("operation", tag(operation))
+                .tag("outcome", tag(outcome))
+                .register(registry)
+                .increment(count);
+    }
+
+    public void itemConflict(ItemConflict reason) {
+        itemConflict(reason, 1);
+    }
+
+    public void itemConflict(ItemConflict reason, int count) {
+        if (count == 0) {
+            return;
+        }
+        Counter.builder("magazine.items.conflicts")
+                .description("Отказы 409 при изменении товаров")
+                .tag("reason", tag(reason))
+                .register(registry)
+                .increment(count);
+    }
+
+    public void transactionRetry(String operation) {
+        Counter.builder("magazine.tx.retries")
+                .description("Повторы транзакций после временных конфликтов")
+                .tag("operation", operation)
+                .register(registry)
+                .increment();
+    }
+
+    private static String tag(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
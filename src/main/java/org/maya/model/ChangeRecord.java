@@ -0,0 +1,30 @@
+package org.maya.model;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Запись ленты изменений (GET /api/changes), вытесненная из кольцевого буфера ChangeFeed.
+ * Номер seq выдает ChangeFeed, он же первичный ключ: записи пишутся пачками и читаются по диапазону seq.
+ */
+@Entity
+// Старые записи удаляются по времени изменения
+@Table(name = "changes", indexes = @Index(name = "idx_changes_changed_at", columnList = "changed_at"))
+public class ChangeRecord extends PanacheEntityBase {
+
+    @Id
+    public Long seq;
+
+    @Column(name = "entity_type", nullable = false, length = 16)
+    public String entityType; // item или order
+
+    @Column(name = "entity_id", nullable = false)
+    public Long entityId;
+
+    @Column(nullable = false, length = 16)
+    public String action;
+
+    @Column(name = "changed_at", nullable = false)
+    public Instant changedAt;
+}
@@ -0,0 +1,39 @@
+package org.maya.model;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * Ответ на запрос с заголовком Idempotency-Key, общий для нескольких экземпляров приложения
+ * (magazine.idempotency.db.enabled). Строка вставляется в начале транзакции заказа со status = 0
+ * и получает ответ в ней же: закоммиченная строка всегда с ответом, а первичный ключ не дает двум
+ * экземплярам выполнить запрос с одним ключом.
+ */
+@Entity
+// Просроченные ключи удаляются по времени создания
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created_at", columnList = "created_at"))
+public class IdempotencyRecord extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "idem_key", length = 255)
+    public String key;
+
+    @Column(nullable = false, length = 64)
+    public String fingerprint; // SHA-256 строки операции ("POST /api/orders") и JSON тела запроса
+
+    @Column(nullable = false)
+    public int status; // 0 - ответа еще нет (видно только внутри транзакции заказа)
+
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    public String body;
+
+    @Column(length = 2048)
+    public String location;
+
+    @Column(name = "created_at", nullable = false)
+    public Instant createdAt;
+}
@@ -11,8 +11,10 @@ import java.util.List;
 @Table(name = "items")
 public class Item extends PanacheEntityBase {
 
+    // Пул последовательности вместо IDENTITY: id известен до INSERT, поэтому вставки идут JDBC-батчами
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_seq")
+    @SequenceGenerator(name = "items_seq", sequenceName = "items_SEQ", allocationSize = 50)
     public Long id;
 
     @Column(nullable = false, unique = true)
@@ -24,7 +26,11 @@ public class Item extends PanacheEntityBase {
     @Column(nullable = false)
     public double price;
 
+    @Version
+    @Column(nullable = false)
+    public Long version;
+
     @OneToMany(mappedBy = "item")
     @JsonManagedReference("item-orderItems")
     public List<OrderItem> orderItems = new ArrayList<>();
-}
\ No newline at end of file
+}
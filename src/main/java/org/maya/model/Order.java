@@ -8,7 +8,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+// Отчеты о продажах выбирают заказы по диапазону дат
+@Table(name = "orders", indexes = @Index(name = "idx_orders_order_date", columnList = "order_date"))
 public class Order extends PanacheEntity {
 
     @Column(name = "order_date", nullable = false)
@@ -17,6 +18,18 @@ public class Order extends PanacheEntity {
     @Column(length = 500)
     public String address;
 
+    // Итоги заказа хранятся в строке заказа: списки и отчеты не читают order_items.
+    // Пересчитываются OrderService при каждом изменении позиций (recalculateTotals)
+    @Column(name = "total_amount", nullable = false)
+    public double totalAmount;
+
+    @Column(name = "line_count", nullable = false)
+    public int lineCount;
+
+    @Version
+    @Column(nullable = false)
+    public Long version;
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonManagedReference("order-orderItems")
     public List<OrderItem> items = new ArrayList<>();
@@ -25,4 +38,10 @@ public class Order extends PanacheEntity {
         items.add(item);
         item.order = this;
     }
+
+    /** Пересчитывает totalAmount и lineCount по текущим позициям. */
+    public void recalculateTotals() {
+        lineCount = items.size();
+        totalAmount = items.stream().mapToDouble(OrderItem::lineAmount).sum();
+    }
 }
\ No newline at end of file
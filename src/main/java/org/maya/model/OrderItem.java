@@ -5,17 +5,27 @@ import io.quarkus.hibernate.orm.panache.PanacheEntity;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "order_items")
+// Покрывающий индекс для отчетов о продажах: позиции заказа читаются без обращения к таблице
+@Table(name = "order_items", indexes = @Index(name = "idx_order_items_report",
+        columnList = "order_id, item_id, quantity, unit_price"))
 public class OrderItem extends PanacheEntity {
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonBackReference("item-orderItems")
     @JoinColumn(name = "item_id")
     public Item item;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonBackReference("order-orderItems")
     @JoinColumn(name = "order_id")
     public Order order;
 
     public int quantity;
+
+    // Цена товара на момент заказа; последующие изменения Item.price на заказ не влияют
+    @Column(name = "unit_price", nullable = false)
+    public double unitPrice;
+
+    public double lineAmount() {
+        return quantity * unitPrice;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package org.maya.service;
+
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.interceptor.Interceptor;
+import jakarta.ws.rs.core.EntityTag;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.event.OrdersChangedEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики изменений каталога и заказов для ETag. Увеличиваются после коммита и после сброса ItemCache
+ * (приоритет наблюдателей ниже), поэтому новый тег никогда не выдается вместе с устаревшими данными из кэша.
+ */
+@ApplicationScoped
+public class CatalogVersion {
+
+    // Счетчики живут в памяти: префикс запуска не дает совпасть тегам разных запусков
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong items = new AtomicLong();        // любые изменения товаров, включая остатки
+    private final AtomicLong itemDetails = new AtomicLong();  // имя/цена/удаление - видны в заказах
+    private final AtomicLong orders = new AtomicLong();
+
+    public EntityTag itemsTag() {
+        return new EntityTag(epoch + "-i" + items.get());
+    }
+
+    public EntityTag ordersTag() {
+        return new EntityTag(epoch + "-o" + orders.get() + "-d" + itemDetails.get());
+    }
+
+    public EntityTag orderTag(Long id, Long version) {
+        return new EntityTag(epoch + "-o" + id + "v" + version + "-d" + itemDetails.get());
+    }
+
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS)
+                        @Priority(Interceptor.Priority.LIBRARY_AFTER) ItemsChangedEvent event) {
+        items.incrementAndGet();
+        if (event.kind == ItemsChangedEvent.Kind.UPDATED || event.kind == ItemsChangedEvent.Kind.DELETED) {
+            itemDetails.incrementAndGet();
+        }
+    }
+
+    void onOrdersChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS)
+                         @Priority(Interceptor.Priority.LIBRARY_AFTER) OrdersChangedEvent event) {
+        orders.incrementAndGet();
+    }
+}
@@ -0,0 +1,298 @@
+package org.maya.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.interceptor.Interceptor;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.dto.ChangeDTO;
+import org.maya.dto.ChangeFeedDTO;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.event.OrdersChangedEvent;
+import org.maya.model.ChangeRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лента изменений товаров и заказов для инкрементальной синхронизации клиентов (GET /api/changes?since=token).
+ * Каждое закоммиченное изменение сущности получает следующий номер seq. Последние magazine.changes.buffer-size
+ * изменений лежат в кольцевом буфере; когда неперсистентных записей в нем становится больше половины,
+ * виртуальный поток дописывает их пачкой в таблицу changes, откуда читаются более старые изменения.
+ * Token - "эпоха-seq": эпоха меняется при каждом запуске, seq продолжается с максимального в таблице.
+ * Если изменений после token уже нет ни в буфере, ни в таблице (удалены по magazine.changes.retention
+ * или потеряны при остановке), клиент получает 410 и перечитывает данные целиком.
+ * Каждое изменение также передается в ChangeStream для подписчиков SSE.
+ */
+@ApplicationScoped
+public class ChangeFeed {
+
+    private record Change(long seq, String type, long id, String action, Instant at) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    ChangeStream changeStream;
+
+    @ConfigProperty(name = "magazine.changes.buffer-size", defaultValue = "10000")
+    int capacity;
+
+    @ConfigProperty(name = "magazine.changes.retention", defaultValue = "7D")
+    Duration retention;
+
+    @ConfigProperty(name = "magazine.changes.default-limit", defaultValue = "500")
+    int defaultLimit;
+
+    @ConfigProperty(name = "magazine.changes.max-limit", defaultValue = "1000")
+    int maxLimit;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Change[] ring;
+    private long startSeq; // последний seq в таблице на момент запуска: старше него в буфере ничего нет
+    private long head;     // последний выданный seq
+    private volatile long persistedUpTo;
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    void onStart(@Observes StartupEvent event) {
+        Long max = QuarkusTransaction.requiringNew().call(() -> ChangeRecord.getEntityManager()
+                .createQuery("select max(c.seq) from ChangeRecord c", Long.class)
+                .getSingleResult());
+        lock.lock();
+        try {
+            ring = new Change[capacity];
+            startSeq = max == null ? 0 : max;
+            head = startSeq;
+            persistedUpTo = startSeq;
+        } finally {
+            lock.unlock();
+        }
+        logger.infof("Change feed started at seq %d (epoch %s)", startSeq, epoch);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        // Дописываем буфер, чтобы клиенты продолжили с прежним token после перезапуска
+        if (writing.compareAndSet(false, true)) {
+            persist();
+        }
+    }
+
+    // После ItemCache и CatalogVersion: клиент, получивший изменение, перечитает уже свежие данные
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS)
+                        @Priority(Interceptor.Priority.LIBRARY_AFTER + 100) ItemsChangedEvent event) {
+        append("item", event.itemIds, event.kind.name());
+    }
+
+    void onOrdersChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS)
+                         @Priority(Interceptor.Priority.LIBRARY_AFTER + 100) OrdersChangedEvent event) {
+        append("order", event.orderIds, event.kind.name());
+    }
+
+    private void append(String type, Collection<Long> ids, String kind) {
+        Instant now = Instant.now();
+        String action = kind.toLowerCase();
+        List<ChangeDTO> appended = new ArrayList<>(ids.size());
+        long unpersisted;
+        lock.lock();
+        try {
+            for (Long id : ids.stream().sorted().toList()) {
+                head++;
+                ring[slot(head)] = new Change(head, type, id, action, now);
+                appended.add(toDto(head, type, id, action, now));
+            }
+            unpersisted = head - persistedUpTo;
+        } finally {
+            lock.unlock();
+        }
+        changeStream.publish(appended);
+        if (unpersisted > capacity / 2 && writing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("change-feed-writer").start(this::persist);
+        }
+    }
+
+    /** Дописывает в таблицу все изменения из буфера после persistedUpTo и удаляет записи старше retention. */
+    private void persist() {
+        try {
+            List<Change> batch = new ArrayList<>();
+            lock.lock();
+            try {
+                long from = Math.max(persistedUpTo + 1, firstInRing());
+                if (from > persistedUpTo + 1) {
+                    logger.warnf("Change feed entries %d..%d were overwritten before being persisted",
+                            persistedUpTo + 1, from - 1);
+                }
+                for (long seq = from; seq <= head; seq++) {
+                    batch.add(ring[slot(seq)]);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            Instant cutoff = Instant.now().minus(retention);
+            long pruned = QuarkusTransaction.requiringNew().call(() -> {
+                for (Change change : batch) {
+                    ChangeRecord record = new ChangeRecord();
+                    record.seq = change.seq();
+                    record.entityType = change.type();
+                    record.entityId = change.id();
+                    record.action = change.action();
+                    record.changedAt = change.at();
+                    record.persist();
+                }
+                return ChangeRecord.delete("changedAt < ?1", cutoff);
+            });
+            persistedUpTo = batch.get(batch.size() - 1).seq();
+            logger.debugf("Persisted %d change feed entries up to seq %d, pruned %d", batch.size(), persistedUpTo, pruned);
+        } catch (Exception e) {
+            logger.warn("Failed to persist change feed entries", e);
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    /**
+     * Изменения после token since (не больше limit) и token для следующего запроса.
+     * Без since - только текущий token; 410 - изменения после since уже недоступны.
+     */
+    public Response changesSince(String since, Integer limit) {
+        if (limit != null && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Limit must be positive\"}").build();
+        }
+        int size = Math.min(limit == null ? defaultLimit : limit, maxLimit);
+        if (since == null || since.isBlank()) {
+            return Response.ok(feed(List.of(), currentSeq(), false)).build();
+        }
+
+        int dash = since.lastIndexOf('-');
+        long sinceSeq;
+        try {
+            sinceSeq = dash > 0 ? Long.parseLong(since.substring(dash + 1)) : -1;
+        } catch (NumberFormatException e) {
+            sinceSeq = -1;
+        }
+        if (sinceSeq < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Invalid change token\"}").build();
+        }
+        // Token прошлого запуска надежен, только если все его изменения успели попасть в таблицу
+        boolean known = since.substring(0, dash).equals(epoch) ? sinceSeq <= currentSeq() : sinceSeq <= startSeq;
+        if (!known) {
+            return resync(since);
+        }
+
+        try {
+            List<ChangeDTO> changes = new ArrayList<>();
+            long next = sinceSeq + 1;
+            long ringFrom = ringFrom();
+            if (next < ringFrom) {
+                List<ChangeRecord> records = ChangeRecord.<ChangeRecord>find("seq >= ?1 and seq < ?2", Sort.by("seq"), next, ringFrom)
+                        .range(0, size - 1)
+                        .list();
+                for (ChangeRecord record : records) {
+                    if (record.seq != next) {
+                        break; // пропуск: изменения удалены или потеряны
+                    }
+                    changes.add(toDto(record.seq, record.entityType, record.entityId, record.action, record.changedAt));
+                    next++;
+                }
+                if (changes.isEmpty()) {
+                    return resync(since);
+                }
+            }
+
+            boolean hasMore;
+            lock.lock();
+            try {
+                // Буфер мог сдвинуться, пока читалась таблица; тогда клиент придет за остатком еще раз
+                if (next >= firstInRing()) {
+                    for (; next <= head && changes.size() < size; next++) {
+                        Change change = ring[slot(next)];
+                        changes.add(toDto(change.seq(), change.type(), change.id(), change.action(), change.at()));
+                    }
+                }
+                hasMore = next <= head;
+            } finally {
+                lock.unlock();
+            }
+            logger.debugf("Change feed: %d changes after %s", changes.size(), since);
+            return Response.ok(feed(changes, next - 1, hasMore)).build();
+        } catch (Exception e) {
+            logger.errorf(e, "Failed to read change feed after %s", since);
+            return Response.serverError().entity("{\"error\": \"Failed to read change feed.\"}").build();
+        }
+    }
+
+    private Response resync(String since) {
+        logger.debugf("Change token %s is no longer available, client must resync", since);
+        return Response.status(Response.Status.GONE)
+                .entity("{\"error\": \"Changes after this token are no longer available, reload all data\", \"resync\": true, \"token\": \""
+                        + token(currentSeq()) + "\"}")
+                .build();
+    }
+
+    private ChangeFeedDTO feed(List<ChangeDTO> changes, long lastSeq, boolean hasMore) {
+        ChangeFeedDTO dto = new ChangeFeedDTO();
+        dto.token = token(lastSeq);
+        dto.changes = changes;
+        dto.hasMore = hasMore;
+        return dto;
+    }
+
+    private static ChangeDTO toDto(long seq, String type, long id, String action, Instant at) {
+        ChangeDTO dto = new ChangeDTO();
+        dto.seq = seq;
+        dto.type = type;
+        dto.id = id;
+        dto.action = action;
+        dto.at = at;
+        return dto;
+    }
+
+    String token(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    private long currentSeq() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long ringFrom() {
+        lock.lock();
+        try {
+            return firstInRing();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Самый старый seq, который еще есть в буфере; вызывается под lock. */
+    private long firstInRing() {
+        return Math.max(startSeq + 1, head - capacity + 1);
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+}
@@ -0,0 +1,241 @@
+package org.maya.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.dto.ChangeDTO;
+import org.maya.dto.ItemResponseDTO;
+import org.maya.dto.OrderResponseDTO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Поток изменений товаров и заказов в Server-Sent Events (GET /api/changes/stream).
+ * Изменения приходят из ChangeFeed после коммита. Один виртуальный поток-диспетчер читает состояние
+ * измененных сущностей (товары - через ItemCache) одним запросом на пачку, сколько бы ни было подписчиков,
+ * и раскладывает его по буферам подписчиков. У каждого подписчика свой виртуальный поток отправки и
+ * ограниченный буфер с объединением изменений одной сущности: медленный клиент получает только последнее
+ * состояние, а при переполнении - событие resync, после которого догоняет изменения по ленте /api/changes.
+ */
+@ApplicationScoped
+public class ChangeStream {
+
+    private record Subscriber(SseEventSink sink, Sse sse, CoalescingBuffer buffer) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ItemService itemService;
+
+    @Inject
+    OrderService orderService;
+
+    @Inject
+    ChangeFeed changeFeed;
+
+    @ConfigProperty(name = "magazine.stream.max-subscribers", defaultValue = "1000")
+    int maxSubscribers;
+
+    @ConfigProperty(name = "magazine.stream.buffer-size", defaultValue = "1000")
+    int bufferSize;
+
+    @ConfigProperty(name = "magazine.stream.dispatch-buffer-size", defaultValue = "10000")
+    int dispatchBufferSize;
+
+    @ConfigProperty(name = "magazine.stream.heartbeat", defaultValue = "15s")
+    Duration heartbeat;
+
+    @ConfigProperty(name = "magazine.stream.send-timeout", defaultValue = "30s")
+    Duration sendTimeout;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    private volatile boolean running = true;
+    private CoalescingBuffer inbox;
+
+    @PostConstruct
+    void init() {
+        inbox = new CoalescingBuffer(dispatchBufferSize);
+        Gauge.builder("magazine.stream.subscribers", subscribers, Set::size)
+                .description("Открытые подписки на поток изменений")
+                .register(registry);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        running = false;
+        inbox.close();
+        subscribers.forEach(subscriber -> subscriber.buffer().close());
+    }
+
+    /** Вызывается ChangeFeed после коммита; без подписчиков ничего не делает. */
+    void publish(List<ChangeDTO> changes) {
+        if (!subscribers.isEmpty()) {
+            inbox.offer(changes);
+        }
+    }
+
+    public void subscribe(SseEventSink sink, Sse sse) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("{\"error\": \"Too many change stream subscribers\"}")
+                    .type(MediaType.APPLICATION_JSON)
+                    .build());
+        }
+        Subscriber subscriber = new Subscriber(sink, sse, new CoalescingBuffer(bufferSize));
+        try {
+            // Первое событие - в потоке запроса: заголовки ответа пишет он, а не поток отправки
+            // наперегонки с RESTEasy, который дописывает начало SSE-ответа после возврата из ресурса
+            write(subscriber, sse.newEventBuilder().comment("connected").build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sink.close();
+            return;
+        } catch (Exception e) {
+            logger.debugf("Change stream subscriber dropped on connect: %s", e.toString());
+            sink.close();
+            return;
+        }
+        subscribers.add(subscriber);
+        if (dispatching.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("change-stream-dispatcher").start(this::dispatch);
+        }
+        Thread.ofVirtual().name("change-stream-sender").start(() -> send(subscriber));
+        logger.debugf("Change stream subscriber connected, %d open", subscribers.size());
+    }
+
+    private void dispatch() {
+        try {
+            while (running) {
+                try {
+                    CoalescingBuffer.Batch batch = inbox.take(heartbeat);
+                    subscribers.removeIf(subscriber -> subscriber.sink().isClosed());
+                    if (batch.isEmpty() || subscribers.isEmpty()) {
+                        continue;
+                    }
+                    if (batch.overflow()) {
+                        subscribers.forEach(subscriber -> subscriber.buffer().overflow());
+                    }
+                    if (!batch.changes().isEmpty()) {
+                        List<ChangeDTO> resolved = resolve(batch.changes());
+                        subscribers.forEach(subscriber -> subscriber.buffer().offer(resolved));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // Состояние не прочитано: подписчики догонят изменения по ленте
+                    logger.warn("Failed to dispatch change stream events", e);
+                    subscribers.forEach(subscriber -> subscriber.buffer().overflow());
+                }
+            }
+        } finally {
+            dispatching.set(false);
+            // подписчик, пришедший, пока флаг еще стоял, диспетчера не запустил
+            if (running && !subscribers.isEmpty() && dispatching.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("change-stream-dispatcher").start(this::dispatch);
+            }
+        }
+    }
+
+    /** Добавляет к изменениям текущее состояние сущностей; исчезнувшие к этому моменту считаются удаленными. */
+    private List<ChangeDTO> resolve(List<ChangeDTO> changes) {
+        Set<Long> itemIds = ids(changes, "item");
+        Set<Long> orderIds = ids(changes, "order");
+        Map<Long, ItemResponseDTO> items = itemIds.isEmpty() ? Map.of()
+                : QuarkusTransaction.requiringNew().call(() -> itemService.findByIds(itemIds));
+        Map<Long, OrderResponseDTO> orders = orderIds.isEmpty() ? Map.of()
+                : QuarkusTransaction.requiringNew().call(() -> orderService.findByIds(orderIds));
+
+        List<ChangeDTO> resolved = new ArrayList<>(changes.size());
+        for (ChangeDTO change : changes) {
+            ChangeDTO dto = new ChangeDTO();
+            dto.seq = change.seq;
+            dto.type = change.type;
+            dto.id = change.id;
+            dto.action = change.action;
+            dto.at = change.at;
+            if (!"deleted".equals(change.action)) {
+                dto.item = "item".equals(change.type) ? items.get(change.id) : null;
+                dto.order = "order".equals(change.type) ? orders.get(change.id) : null;
+                if (dto.item == null && dto.order == null) {
+                    dto.action = "deleted";
+                }
+            }
+            resolved.add(dto);
+        }
+        return resolved;
+    }
+
+    private static Set<Long> ids(List<ChangeDTO> changes, String type) {
+        return changes.stream()
+                .filter(change -> type.equals(change.type) && !"deleted".equals(change.action))
+                .map(change -> change.id)
+                .collect(Collectors.toSet());
+    }
+
+    private void send(Subscriber subscriber) {
+        Sse sse = subscriber.sse();
+        try {
+            while (running && !subscriber.sink().isClosed()) {
+                CoalescingBuffer.Batch batch = subscriber.buffer().take(heartbeat);
+                if (batch.isEmpty()) {
+                    write(subscriber, sse.newEventBuilder().comment("ping").build()); // держит соединение через прокси
+                    continue;
+                }
+                if (batch.overflow()) {
+                    write(subscriber, sse.newEventBuilder().name("resync").data("{}").build());
+                }
+                for (ChangeDTO change : batch.changes()) {
+                    write(subscriber, sse.newEventBuilder()
+                            .name(change.type)
+                            .id(changeFeed.token(change.seq))
+                            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                            .data(ChangeDTO.class, change)
+                            .build());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Клиент отключился или не успевает читать (send-timeout)
+            logger.debugf("Change stream subscriber dropped: %s", e.toString());
+        } finally {
+            subscribers.remove(subscriber);
+            subscriber.buffer().close();
+            if (!subscriber.sink().isClosed()) {
+                subscriber.sink().close();
+            }
+            logger.debugf("Change stream subscriber disconnected, %d open", subscribers.size());
+        }
+    }
+
+    private void write(Subscriber subscriber, OutboundSseEvent event) throws Exception {
+        subscriber.sink().send(event).toCompletableFuture().get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
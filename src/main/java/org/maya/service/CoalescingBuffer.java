@@ -0,0 +1,117 @@
+package org.maya.service;
+
+import org.maya.dto.ChangeDTO;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченный буфер изменений для ChangeStream. Новое изменение сущности заменяет ожидающее изменение
+ * той же сущности и переносится в конец, поэтому seq в буфере всегда возрастают, а частые правки
+ * одного товара занимают одно место. При переполнении буфер очищается и помечается overflow:
+ * получатель должен догнать изменения по ленте /api/changes.
+ */
+final class CoalescingBuffer {
+
+    /** Забранные изменения в порядке seq; overflow - часть изменений отброшена. */
+    record Batch(List<ChangeDTO> changes, boolean overflow) {
+
+        boolean isEmpty() {
+            return changes.isEmpty() && !overflow;
+        }
+    }
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final LinkedHashMap<String, ChangeDTO> pending = new LinkedHashMap<>();
+    private boolean overflow;
+    private boolean closed;
+
+    CoalescingBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void offer(Collection<ChangeDTO> changes) {
+        lock.lock();
+        try {
+            if (closed || overflow) {
+                return; // после переполнения получатель все равно догоняет по ленте
+            }
+            for (ChangeDTO change : changes) {
+                String key = change.type + ':' + change.id;
+                pending.put(key, merge(pending.remove(key), change));
+                if (pending.size() > capacity) {
+                    markOverflow();
+                    break;
+                }
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void overflow() {
+        lock.lock();
+        try {
+            markOverflow();
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void markOverflow() {
+        pending.clear();
+        overflow = true;
+    }
+
+    /** Ждет изменений не дольше timeout и забирает все ожидающие; пустой Batch - таймаут или close. */
+    Batch take(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = timeout.toNanos();
+            while (pending.isEmpty() && !overflow && !closed && nanos > 0) {
+                nanos = changed.awaitNanos(nanos);
+            }
+            Batch batch = new Batch(List.copyOf(pending.values()), overflow);
+            pending.clear();
+            overflow = false;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pending.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Последнее состояние побеждает; созданная и сразу измененная сущность остается created. */
+    private static ChangeDTO merge(ChangeDTO previous, ChangeDTO next) {
+        if (previous == null || !"created".equals(previous.action) || "deleted".equals(next.action)) {
+            return next;
+        }
+        ChangeDTO merged = new ChangeDTO();
+        merged.seq = next.seq;
+        merged.type = next.type;
+        merged.id = next.id;
+        merged.action = previous.action;
+        merged.at = next.at;
+        merged.item = next.item;
+        merged.order = next.order;
+        return merged;
+    }
+}
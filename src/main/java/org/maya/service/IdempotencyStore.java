@@ -0,0 +1,296 @@
+package org.maya.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.model.IdempotencyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Повторы запросов с заголовком Idempotency-Key (POST /api/orders, POST /api/orders/batch).
+ * Первый запрос с ключом выполняется, его ответ хранится magazine.idempotency.ttl; повтор с тем же ключом
+ * и телом получает сохраненный ответ без обращения к БД, а одновременные запросы с одним ключом ждут
+ * результата первого. Тот же ключ с другим телом - 422. Ответы 5xx, 409 и 429 не сохраняются:
+ * такой запрос можно повторить с тем же ключом.
+ * С magazine.idempotency.db.enabled ответ еще и записывается в таблицу idempotency_keys - в транзакции
+ * самой операции (см. withinTransaction), поэтому заказ и ответ на него коммитятся или откатываются вместе.
+ * Незавершенных записей в таблице не бывает: запрос с тем же ключом на другом экземпляре ждет коммита
+ * первого на первичном ключе и получает его ответ, а не выполняется заново.
+ */
+@ApplicationScoped
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final Duration PRUNE_INTERVAL = Duration.ofMinutes(10);
+
+    /** Ответ в виде, пригодном для повтора и для таблицы. */
+    private record StoredResponse(int status, String body, String location) {
+
+        Response toResponse() {
+            Response.ResponseBuilder builder = Response.status(status).entity(body).type(MediaType.APPLICATION_JSON);
+            if (location != null) {
+                builder.header(HttpHeaders.LOCATION, location);
+            }
+            if (reusable(status)) {
+                builder.header(REPLAYED_HEADER, "true");
+            }
+            return builder.build();
+        }
+    }
+
+    /** Ключ в памяти: fingerprint первого запроса и его ответ, пока он выполняется - незавершенный. */
+    private record Entry(String fingerprint, CompletableFuture<StoredResponse> response) {
+    }
+
+    /** Ключ запроса, ответ на который записывается в таблицу в транзакции операции (db.enabled). */
+    public record Claim(String key, String fingerprint) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "magazine.idempotency.maximum-size", defaultValue = "10000")
+    long maximumSize;
+
+    @ConfigProperty(name = "magazine.idempotency.ttl", defaultValue = "24H")
+    Duration ttl;
+
+    @ConfigProperty(name = "magazine.idempotency.wait-timeout", defaultValue = "30s")
+    Duration waitTimeout;
+
+    @ConfigProperty(name = "magazine.idempotency.db.enabled", defaultValue = "false")
+    boolean dbEnabled;
+
+    private Cache<String, Entry> entries;
+    private final AtomicLong lastPrune = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        // Вытесненный по размеру ключ выполняющегося запроса теряет только объединение повторов
+        entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, entries, "magazine.idempotency");
+    }
+
+    /**
+     * Выполняет action не больше одного раза для ключа key; operation и request образуют fingerprint запроса.
+     * Без ключа action просто выполняется. С db.enabled action получает Claim и должна выполнить свою
+     * транзакцию через withinTransaction, иначе - null.
+     */
+    public Response execute(String key, String operation, Object request, Function<Claim, Response> action) {
+        if (key == null) {
+            return action.apply(null);
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\":\"Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters\"}")
+                    .build();
+        }
+        String fingerprint = fingerprint(operation, request);
+        Entry mine = new Entry(fingerprint, new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            logger.debugf("Repeated request with Idempotency-Key %s", key);
+            return replay(existing, fingerprint);
+        }
+
+        Response response;
+        StoredResponse stored;
+        try {
+            Claim claim = dbEnabled ? new Claim(key, fingerprint) : null;
+            Response recorded = claim != null ? recorded(claim) : null;
+            if (recorded != null) {
+                response = recorded;
+            } else {
+                response = action.apply(claim);
+            }
+            stored = store(response);
+        } catch (RuntimeException e) {
+            entries.asMap().remove(key, mine);
+            mine.response().completeExceptionally(e);
+            throw e;
+        }
+        if (!reusable(stored.status())) {
+            entries.asMap().remove(key, mine);
+        }
+        mine.response().complete(stored);
+        return response;
+    }
+
+    /**
+     * Выполняет work в текущей транзакции операции и записывает ее ответ в idempotency_keys в той же транзакции.
+     * Строка ключа вставляется до work: параллельная транзакция с тем же ключом ждет на первичном ключе
+     * и после коммита первой падает на нарушении уникальности (ответ тогда дает recorded). Откат транзакции
+     * (например, нехватка товара) убирает и строку - такой запрос можно выполнить заново.
+     * Ответ, уже закоммиченный другим экземпляром, возвращается вместо выполнения work.
+     * Без claim (ключа нет или db.enabled выключен) просто выполняет work.
+     */
+    public Response withinTransaction(Claim claim, Supplier<Response> work) {
+        if (claim == null) {
+            return work.get();
+        }
+        Instant now = Instant.now();
+        IdempotencyRecord record = IdempotencyRecord.findById(claim.key());
+        if (record != null && record.createdAt.plus(ttl).isAfter(now)) {
+            return fromRecord(record, claim.fingerprint()).toResponse();
+        }
+        if (record == null) {
+            record = new IdempotencyRecord();
+            record.key = claim.key();
+        }
+        record.fingerprint = claim.fingerprint();
+        record.status = 0;
+        record.body = null;
+        record.location = null;
+        record.createdAt = now;
+        record.persist();
+        IdempotencyRecord.flush();
+
+        Response response = work.get();
+        StoredResponse stored = store(response);
+        if (reusable(stored.status())) {
+            record.status = stored.status();
+            record.body = stored.body();
+            record.location = stored.location();
+        } else {
+            record.delete();
+        }
+        return response;
+    }
+
+    /**
+     * Ответ, закоммиченный в idempotency_keys, или null. Вызывается и после нарушения уникальности
+     * в withinTransaction - ключ в это время закоммитил запрос на другом экземпляре.
+     */
+    public Response recorded(Claim claim) {
+        Instant now = Instant.now();
+        pruneExpired(now);
+        IdempotencyRecord record = QuarkusTransaction.requiringNew().call(() -> IdempotencyRecord.findById(claim.key()));
+        if (record == null || !record.createdAt.plus(ttl).isAfter(now)) {
+            return null;
+        }
+        logger.debugf("Idempotency-Key %s answered from idempotency_keys", claim.key());
+        return fromRecord(record, claim.fingerprint()).toResponse();
+    }
+
+    /** Ответ повторен по ключу, а не получен выполнением операции. */
+    public static boolean isReplayed(Response response) {
+        return response.getHeaderString(REPLAYED_HEADER) != null;
+    }
+
+    private Response replay(Entry existing, String fingerprint) {
+        if (!existing.fingerprint().equals(fingerprint)) {
+            return mismatch();
+        }
+        try {
+            return existing.response().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS).toResponse();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return inProgress();
+        } catch (ExecutionException | TimeoutException e) {
+            return inProgress();
+        }
+    }
+
+    private void pruneExpired(Instant now) {
+        long last = lastPrune.get();
+        if (now.toEpochMilli() - last < PRUNE_INTERVAL.toMillis() || !lastPrune.compareAndSet(last, now.toEpochMilli())) {
+            return;
+        }
+        try {
+            long pruned = QuarkusTransaction.requiringNew().call(() -> IdempotencyRecord.delete("createdAt < ?1", now.minus(ttl)));
+            logger.debugf("Pruned %d expired idempotency keys", pruned);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to prune expired idempotency keys", e);
+        }
+    }
+
+    private StoredResponse fromRecord(IdempotencyRecord record, String fingerprint) {
+        if (!record.fingerprint.equals(fingerprint)) {
+            return new StoredResponse(422, mismatch().getEntity().toString(), null);
+        }
+        if (record.status == 0) {
+            // Строка без ответа вне вставившей ее транзакции не видна; если такая все же закоммичена,
+            // ключ не выполняется заново - до истечения ttl ответ 409
+            return new StoredResponse(Response.Status.CONFLICT.getStatusCode(), inProgress().getEntity().toString(), null);
+        }
+        return new StoredResponse(record.status, record.body, record.location);
+    }
+
+    private StoredResponse store(Response response) {
+        Object entity = response.getEntity();
+        String body;
+        try {
+            body = entity == null || entity instanceof String ? (String) entity : objectMapper.writeValueAsString(entity);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize response for Idempotency-Key", e);
+        }
+        String location = response.getLocation() != null ? response.getLocation().toString() : null;
+        return new StoredResponse(response.getStatus(), body, location);
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Failed to compute request fingerprint", e);
+        }
+    }
+
+    /** Ответы, которые повторяются по ключу; остальные (сбой, конфликт, перегрузка) можно выполнить заново. */
+    private static boolean reusable(int status) {
+        return status < 500 && status != 409 && status != 422 && status != 429;
+    }
+
+    private static Response mismatch() {
+        return Response.status(422)
+                .entity("{\"error\":\"Idempotency-Key was already used with a different request\"}")
+                .build();
+    }
+
+    private static Response inProgress() {
+        return Response.status(Response.Status.CONFLICT)
+                .entity("{\"error\":\"Request with this Idempotency-Key is in progress or failed, please retry\"}")
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package org.maya.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.dto.ItemPageDTO;
+import org.maya.dto.ItemResponseDTO;
+import org.maya.event.ItemsChangedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Кэш уже смапленных страниц каталога и отдельных товаров.
+ * Записи сбрасываются после коммита изменений товаров (ItemsChangedEvent): страницы - только те,
+ * в диапазон id которых попал измененный товар.
+ */
+@ApplicationScoped
+public class ItemCache {
+
+    /** Ключ страницы; after = null - с начала каталога, limit = null - весь каталог (?all=true). */
+    record PageKey(Long after, Integer limit) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "magazine.cache.items.maximum-size", defaultValue = "10000")
+    long itemsMaximumSize;
+
+    @ConfigProperty(name = "magazine.cache.pages.maximum-size", defaultValue = "1000")
+    long pagesMaximumSize;
+
+    @ConfigProperty(name = "magazine.cache.expire-after-write", defaultValue = "5M")
+    Duration expireAfterWrite;
+
+    private Cache<Long, ItemResponseDTO> items;
+    private Cache<PageKey, ItemPageDTO> pages;
+
+    // Растет при каждой инвалидации: значение, прочитанное из БД до коммита изменения, в кэш не попадет
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        items = Caffeine.newBuilder()
+                .maximumSize(itemsMaximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        pages = Caffeine.newBuilder()
+                .maximumSize(pagesMaximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, items, "magazine.items");
+        CaffeineCacheMetrics.monitor(registry, pages, "magazine.item-pages");
+    }
+
+    public ItemResponseDTO item(Long id, Supplier<ItemResponseDTO> loader) {
+        return getOrLoad(items, id, loader);
+    }
+
+    /** Товары по id одним обращением к loader за всеми отсутствующими в кэше. */
+    public Map<Long, ItemResponseDTO> items(Collection<Long> ids, Function<Set<Long>, Map<Long, ItemResponseDTO>> loader) {
+        Map<Long, ItemResponseDTO> result = new HashMap<>(items.getAllPresent(ids));
+        Set<Long> missing = new HashSet<>(ids);
+        missing.removeAll(result.keySet());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long loadedAt = generation.get();
+        Map<Long, ItemResponseDTO> loaded = loader.apply(missing);
+        loaded.forEach((id, item) -> putIfCurrent(items, id, item, loadedAt));
+        result.putAll(loaded);
+        return result;
+    }
+
+    public ItemPageDTO page(Long after, Integer limit, Supplier<ItemPageDTO> loader) {
+        return getOrLoad(pages, new PageKey(after, limit), loader);
+    }
+
+    private <K, V> V getOrLoad(Cache<K, V> cache, K key, Supplier<V> loader) {
+        V cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = generation.get();
+        V value = loader.get();
+        if (value != null) {
+            putIfCurrent(cache, key, value, loadedAt);
+        }
+        return value;
+    }
+
+    /**
+     * Кладет значение, прочитанное из БД в поколении loadedAt. Инвалидация сначала меняет поколение, потом
+     * удаляет записи, поэтому успевшая между проверкой и put видна повторной проверке - запись снимается.
+     */
+    private <K, V> void putIfCurrent(Cache<K, V> cache, K key, V value, long loadedAt) {
+        if (generation.get() != loadedAt) {
+            return;
+        }
+        cache.put(key, value);
+        if (generation.get() != loadedAt) {
+            cache.asMap().remove(key, value);
+        }
+    }
+
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) ItemsChangedEvent event) {
+        generation.incrementAndGet();
+        items.invalidateAll(event.itemIds);
+        pages.asMap().entrySet().removeIf(entry -> covers(entry.getKey(), entry.getValue(), event));
+        logger.debugf("Item cache invalidated for %s %s", event.kind, event.itemIds);
+    }
+
+    /**
+     * Страница (after, последний id] содержит или должна содержать один из измененных товаров.
+     * Последняя страница (nextCursor == null) открыта справа - в неё попадают новые товары.
+     */
+    private static boolean covers(PageKey key, ItemPageDTO page, ItemsChangedEvent event) {
+        long lower = key.after() == null ? Long.MIN_VALUE : key.after();
+        long upper = page.nextCursor == null ? Long.MAX_VALUE : page.nextCursor;
+        return event.itemIds.stream().anyMatch(id -> id > lower && id <= upper);
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        result.put("items", describe(items));
+        result.put("pages", describe(pages));
+        return result;
+    }
+
+    private static Map<String, Object> describe(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package org.maya.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.dto.BulkImportResultDTO;
+import org.maya.dto.BulkImportRowDTO;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.metrics.ShopMetrics;
+import org.maya.model.Item;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Потоковый импорт товаров: NDJSON или JSON-массив читается построчно, строки валидируются по мере чтения
+ * и вставляются пачками по magazine.items.bulk.batch-size в отдельных транзакциях.
+ */
+@ApplicationScoped
+public class ItemImportService {
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    TransactionRetry transactionRetry;
+
+    @Inject
+    Event<ItemsChangedEvent> itemsChanged;
+
+    @Inject
+    ShopMetrics shopMetrics;
+
+    @ConfigProperty(name = "magazine.items.bulk.batch-size", defaultValue = "500")
+    int batchSize;
+
+    public Response importItems(InputStream body) {
+        BulkImportResultDTO result = new BulkImportResultDTO();
+        List<PendingRow> chunk = new ArrayList<>(batchSize);
+        Set<String> seenNames = new HashSet<>(); // дубликаты внутри самого импорта
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                JsonNode node = parser.readValueAsTree();
+                BulkImportRowDTO row = new BulkImportRowDTO();
+                row.row = ++result.total;
+                result.rows.add(row);
+
+                Item item = validate(node, row, seenNames);
+                if (item != null) {
+                    chunk.add(new PendingRow(item, row));
+                    if (chunk.size() >= batchSize) {
+                        insertChunk(chunk);
+                        chunk.clear();
+                    }
+                }
+                token = parser.nextToken();
+            }
+            insertChunk(chunk);
+        } catch (JsonProcessingException e) {
+            // Синтаксическая ошибка: дальше поток не разобрать, уже вставленные пачки остаются
+            logger.warnf("Bulk item import aborted after %d rows: malformed input: %s", result.total, e.getOriginalMessage());
+            insertChunk(chunk);
+            summarize(result);
+            return Response.status(Response.Status.BAD_REQUEST).entity(result).build();
+        } catch (IOException e) {
+            logger.error("Bulk item import failed while reading request body", e);
+            return Response.serverError().entity("{\"error\": \"Failed to read request body\"}").build();
+        }
+
+        summarize(result);
+        logger.infof("Bulk item import finished: %d rows, %d created, %d failed", result.total, result.created, result.failed);
+        return Response.ok(result).build();
+    }
+
+    private Item validate(JsonNode node, BulkImportRowDTO row, Set<String> seenNames) {
+        Item item;
+        try {
+            item = objectMapper.treeToValue(node, Item.class);
+        } catch (JsonProcessingException e) {
+            return reject(row, 400, "Invalid item: " + e.getOriginalMessage());
+        }
+        if (item == null || item.name == null || item.name.trim().isEmpty()) {
+            return reject(row, 400, "Item name is required");
+        }
+        item.name = item.name.trim();
+        item.id = null;
+        item.version = null;
+        row.name = item.name;
+        if (item.quantity < 0) {
+            return reject(row, 400, "Quantity cannot be negative");
+        }
+        if (item.price < 0) {
+            return reject(row, 400, "Price cannot be negative");
+        }
+        if (!seenNames.add(item.name)) {
+            return reject(row, 409, "Duplicate name within import");
+        }
+        return item;
+    }
+
+    private void insertChunk(List<PendingRow> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionRetry.call("bulk item import", () -> doInsertChunk(chunk));
+        } catch (Exception e) {
+            if (TransactionRetry.isConstraintViolation(e)) {
+                // Параллельно вставили товар с тем же именем: повторная проверка имен его увидит
+                logger.debugf("Unique name conflict in bulk chunk of %d rows, re-checking names", chunk.size());
+                try {
+                    transactionRetry.call("bulk item import", () -> doInsertChunk(chunk));
+                    return;
+                } catch (Exception retryFailure) {
+                    e = retryFailure;
+                }
+            }
+            logger.error("Bulk item import chunk failed", e);
+            for (PendingRow pending : chunk) {
+                pending.row.id = null;
+                reject(pending.row, 500, "Chunk insert failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private Void doInsertChunk(List<PendingRow> chunk) {
+        for (PendingRow pending : chunk) {
+            // после отката предыдущей попытки у сущностей остаются выданные id
+            pending.item.id = null;
+            pending.item.version = null;
+        }
+        List<String> names = chunk.stream().map(pending -> pending.item.name).toList();
+        Set<String> existing = new HashSet<>(Item.getEntityManager()
+                .createQuery("select i.name from Item i where i.name in :names", String.class)
+                .setParameter("names", names)
+                .getResultList());
+
+        List<PendingRow> inserted = new ArrayList<>();
+        for (PendingRow pending : chunk) {
+            if (existing.contains(pending.item.name)) {
+                reject(pending.row, 409, "Товар с таким именем уже существует");
+                continue;
+            }
+            pending.item.persist();
+            inserted.add(pending);
+        }
+        Item.flush();
+        if (!inserted.isEmpty()) {
+            itemsChanged.fire(new ItemsChangedEvent(ItemsChangedEvent.Kind.CREATED,
+                    inserted.stream().collect(Collectors.toMap(pending -> pending.item.id, pending -> pending.item.name))));
+        }
+        for (PendingRow pending : inserted) {
+            pending.row.status = 201;
+            pending.row.id = pending.item.id;
+            pending.row.error = null;
+        }
+        return null;
+    }
+
+    private static Item reject(BulkImportRowDTO row, int status, String error) {
+        row.status = status;
+        row.error = error;
+        return null;
+    }
+
+    private void summarize(BulkImportResultDTO result) {
+        result.created = (int) result.rows.stream().filter(row -> row.status == 201).count();
+        result.failed = result.total - result.created;
+        // конфликты считаются по итогу: пачку TransactionRetry может выполнить повторно
+        shopMetrics.itemConflict(ShopMetrics.ItemConflict.NAME, (int) result.rows.stream().filter(row -> row.status == 409).count());
+    }
+
+    private record PendingRow(Item item, BulkImportRowDTO row) {
+    }
+}
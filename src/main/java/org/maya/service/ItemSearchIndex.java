@@ -0,0 +1,306 @@
+package org.maya.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.model.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Индекс названий товаров в памяти для поиска подстроки без учета регистра и проверки уникальности без запроса в БД.
+ * Результаты идут уровнями: точное совпадение и префикс названия, затем начало слова (оба - из отсортированных
+ * карт), затем вхождение внутри слова (триграммы). Каждый уровень читается, только пока не набран limit,
+ * а внутри уровня порядок фиксирован, поэтому перебор всех совпадений не нужен.
+ * Строится при старте и обновляется после коммита изменений товаров (ItemsChangedEvent).
+ * Чтения идут параллельно под read-lock; записи редки и берут write-lock.
+ */
+@ApplicationScoped
+public class ItemSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final long[] NO_IDS = new long[0];
+
+    /** Найденный товар: rank 0 - точное совпадение, 1 - префикс, 2 - начало слова, 3 - внутри слова. */
+    public record Match(long id, String name, int rank) {
+    }
+
+    private record Entry(String name, String lower) {
+    }
+
+    @Inject
+    Logger logger;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<String, Long> idsByName = new HashMap<>();
+    private final Map<String, Postings> grams = new HashMap<>();
+    // ключ - название в нижнем регистре + '\0' + id: разные товары могут отличаться только регистром
+    private final NavigableMap<String, Long> sorted = new TreeMap<>();
+    // то же для хвостов названия, начинающихся со второго, третьего... слова
+    private final NavigableMap<String, Long> words = new TreeMap<>();
+
+    void onStart(@Observes StartupEvent event) {
+        rebuild();
+    }
+
+    /** Перечитывает все названия из БД; вызывается при старте. */
+    public void rebuild() {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            idsByName.clear();
+            grams.clear();
+            sorted.clear();
+            words.clear();
+            QuarkusTransaction.requiringNew().run(() -> {
+                try (Stream<Object[]> rows = Item.getEntityManager()
+                        .createQuery("select i.id, i.name from Item i order by i.id", Object[].class)
+                        .getResultStream()) {
+                    rows.forEach(row -> add((Long) row[0], (String) row[1]));
+                }
+            });
+            logger.infof("Item search index built: %d items, %d trigrams in %d ms",
+                    entries.size(), grams.size(), (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) ItemsChangedEvent event) {
+        if (event.kind == ItemsChangedEvent.Kind.STOCK_CHANGED) {
+            return;
+        }
+        if (event.kind == ItemsChangedEvent.Kind.DELETED) {
+            event.itemIds.forEach(this::remove);
+        } else {
+            event.names.forEach(this::put);
+        }
+    }
+
+    /** Id товара с точно таким названием (с учетом регистра, как ограничение уникальности в БД) или null. */
+    public Long idByName(String name) {
+        lock.readLock().lock();
+        try {
+            return idsByName.get(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Не больше limit товаров, в названии которых есть query (без учета регистра), лучшие первыми.
+     * Запрос короче трех символов ищется только как префикс названия или слова.
+     */
+    public List<Match> search(String query, int limit) {
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        if (needle.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, Match> result = new LinkedHashMap<>();
+            collectPrefixes(sorted, needle, limit, result, false);
+            collectPrefixes(words, needle, limit, result, true);
+            if (needle.length() >= GRAM) {
+                collectInsideWords(needle, limit, result);
+            }
+            return List.copyOf(result.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Ключи, начинающиеся с needle, в порядке ключа; точное совпадение названия идет первым. */
+    private void collectPrefixes(NavigableMap<String, Long> keys, String needle, int limit,
+                                 Map<Long, Match> result, boolean wordStart) {
+        for (Map.Entry<String, Long> key : keys.subMap(needle, true, needle + Character.MAX_VALUE, false).entrySet()) {
+            if (result.size() >= limit) {
+                return;
+            }
+            Entry entry = entries.get(key.getValue());
+            int rank = wordStart ? 2 : entry.lower().length() == needle.length() ? 0 : 1;
+            result.putIfAbsent(key.getValue(), new Match(key.getValue(), entry.name(), rank));
+        }
+    }
+
+    /**
+     * Вхождения внутри слова в порядке id. Кандидаты - самый короткий список триграммы запроса,
+     * остальные проверяются бинарным поиском; перебор останавливается, как только набран limit.
+     * Все совпадения лучших уровней к этому моменту уже собраны (иначе limit был бы набран раньше).
+     */
+    private void collectInsideWords(String needle, int limit, Map<Long, Match> result) {
+        if (result.size() >= limit) {
+            return;
+        }
+        Postings[] lists = new Postings[needle.length() - GRAM + 1];
+        for (int i = 0; i < lists.length; i++) {
+            Postings postings = grams.get(needle.substring(i, i + GRAM));
+            if (postings == null) {
+                return;
+            }
+            lists[i] = postings;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(postings -> postings.size));
+
+        Postings candidates = lists[0];
+        for (int c = 0; c < candidates.size && result.size() < limit; c++) {
+            long id = candidates.ids[c];
+            if (result.containsKey(id) || !containsAll(lists, id)) {
+                continue;
+            }
+            Entry entry = entries.get(id);
+            if (entry.lower().contains(needle)) { // все триграммы могут быть, но не подряд
+                result.put(id, new Match(id, entry.name(), 3));
+            }
+        }
+    }
+
+    private static boolean containsAll(Postings[] lists, long id) {
+        for (int i = 1; i < lists.length; i++) {
+            if (!lists[i].contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Добавляет товар или меняет его название. */
+    void put(Long id, String name) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.get(id);
+            if (previous != null) {
+                if (previous.name().equals(name)) {
+                    return;
+                }
+                remove(id);
+            }
+            add(id, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Long id, String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        entries.put(id, new Entry(name, lower));
+        idsByName.put(name, id);
+        sorted.put(lower + '\0' + id, id);
+        for (int at : wordStarts(lower)) {
+            words.put(lower.substring(at) + '\0' + id, id);
+        }
+        for (String gram : gramsOf(lower)) {
+            grams.computeIfAbsent(gram, key -> new Postings()).add(id);
+        }
+    }
+
+    void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                return;
+            }
+            idsByName.remove(entry.name(), id);
+            sorted.remove(entry.lower() + '\0' + id);
+            for (int at : wordStarts(entry.lower())) {
+                words.remove(entry.lower().substring(at) + '\0' + id);
+            }
+            for (String gram : gramsOf(entry.lower())) {
+                Postings postings = grams.get(gram);
+                if (postings != null && postings.remove(id) && postings.size == 0) {
+                    grams.remove(gram);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Начала слов, кроме первого: буква или цифра после другого символа. */
+    private static List<Integer> wordStarts(String lower) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 1; i < lower.length(); i++) {
+            if (Character.isLetterOrDigit(lower.charAt(i)) && !Character.isLetterOrDigit(lower.charAt(i - 1))) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> gramsOf(String lower) {
+        List<String> result = new ArrayList<>(Math.max(0, lower.length() - GRAM + 1));
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            String gram = lower.substring(i, i + GRAM);
+            if (!result.contains(gram)) {
+                result.add(gram);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Отсортированный список id без упаковки в Long: на миллионе товаров это десятки миллионов вхождений.
+     * Id выдаются по возрастанию, поэтому вставка почти всегда - дописывание в конец.
+     */
+    private static final class Postings {
+
+        long[] ids = NO_IDS;
+        int size;
+
+        void add(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
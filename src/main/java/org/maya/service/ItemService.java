@@ -1,15 +1,26 @@
 package org.maya.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
 import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
+import org.maya.dto.ItemPageDTO;
 import org.maya.dto.ItemResponseDTO;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.metrics.ShopMetrics;
+import org.maya.metrics.ShopMetrics.ItemConflict;
 import org.maya.model.Item;
 import org.maya.model.OrderItem;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
@@ -18,14 +29,146 @@ public class ItemService {
     @Inject
     Logger logger;
 
+    @Inject
+    TransactionRetry transactionRetry;
+
+    @Inject
+    ItemCache itemCache;
+
+    @Inject
+    Event<ItemsChangedEvent> itemsChanged;
+
+    @Inject
+    ShopMetrics shopMetrics;
+
+    @Inject
+    ItemSearchIndex searchIndex;
+
+    @ConfigProperty(name = "magazine.items.page.default-size", defaultValue = "50")
+    int defaultPageSize;
+
+    @ConfigProperty(name = "magazine.items.page.max-size", defaultValue = "500")
+    int maxPageSize;
+
+    @ConfigProperty(name = "magazine.items.unbounded-list.enabled", defaultValue = "false")
+    boolean unboundedListEnabled;
+
+    @ConfigProperty(name = "magazine.items.search.default-limit", defaultValue = "20")
+    int defaultSearchLimit;
+
+    @ConfigProperty(name = "magazine.items.search.max-limit", defaultValue = "100")
+    int maxSearchLimit;
+
+    /**
+     * Keyset-пагинация по items.id: возвращает не больше limit товаров с id > after.
+     * Размер страницы ограничен сверху magazine.items.page.max-size.
+     */
+    public Response getPage(Long after, Integer limit) {
+        logger.debugf("Attempting to fetch items page after=%s, limit=%s", after, limit);
+        if (after != null && after < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Cursor must be non-negative\"}").build();
+        }
+        if (limit != null && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Limit must be positive\"}").build();
+        }
+        try {
+            int pageSize = Math.min(limit == null ? defaultPageSize : limit, maxPageSize);
+            ItemPageDTO page = itemCache.page(after, pageSize, () -> loadPage(after, pageSize));
+            logger.debugf("Found %d items, next cursor: %s", page.items.size(), page.nextCursor);
+            return Response.ok(page).build();
+        } catch (Exception e) {
+            logger.error("Failed to fetch items page", e);
+            return Response.serverError().entity("{\"error\": \"Failed to fetch items from database.\"}").build();
+        }
+    }
+
+    private ItemPageDTO loadPage(Long after, int pageSize) {
+        // Берем на одну строку больше, чтобы понять, есть ли следующая страница
+        List<Item> items = (after == null
+                ? Item.<Item>findAll(Sort.by("id"))
+                : Item.<Item>find("id > ?1", Sort.by("id"), after))
+                .range(0, pageSize)
+                .list();
+
+        ItemPageDTO page = new ItemPageDTO();
+        boolean hasMore = items.size() > pageSize;
+        page.items = items.stream()
+                .limit(pageSize)
+                .map(this::mapToDto)
+                .collect(Collectors.toList());
+        page.nextCursor = hasMore ? page.items.get(page.items.size() - 1).id : null;
+        return page;
+    }
+
+    /**
+     * Товары по id через ItemCache: из БД одним запросом читаются только отсутствующие в кэше.
+     * Удаленных товаров в результате нет.
+     */
+    public Map<Long, ItemResponseDTO> findByIds(Collection<Long> ids) {
+        return itemCache.items(ids, missing -> Item.<Item>list("id in ?1", missing).stream()
+                .collect(Collectors.toMap(item -> item.id, this::mapToDto)));
+    }
+
+    /**
+     * Поиск по подстроке названия через ItemSearchIndex; товары в порядке релевантности.
+     * Из БД (одним запросом) читаются только товары, которых нет в ItemCache.
+     */
+    public Response search(String query, Integer limit) {
+        if (query == null || query.isBlank()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Query parameter q is required\"}").build();
+        }
+        if (limit != null && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Limit must be positive\"}").build();
+        }
+        try {
+            List<Long> ids = searchIndex.search(query, Math.min(limit == null ? defaultSearchLimit : limit, maxSearchLimit))
+                    .stream()
+                    .map(ItemSearchIndex.Match::id)
+                    .toList();
+            Map<Long, ItemResponseDTO> found = findByIds(ids);
+            // товар мог быть удален после поиска по индексу
+            List<ItemResponseDTO> dtos = ids.stream().map(found::get).filter(Objects::nonNull).toList();
+            logger.debugf("Search '%s' matched %d items", query, dtos.size());
+            return Response.ok(dtos).build();
+        } catch (Exception e) {
+            logger.errorf(e, "Failed to search items: '%s'", query);
+            return Response.serverError().entity("{\"error\": \"Failed to search items.\"}").build();
+        }
+    }
+
+    public Response getById(Long id) {
+        try {
+            ItemResponseDTO dto = itemCache.item(id, () -> mapToDto(Item.findById(id)));
+            if (dto == null) {
+                return Response.status(Response.Status.NOT_FOUND).entity("{\"error\": \"Item not found\"}").build();
+            }
+            return Response.ok(dto).build();
+        } catch (Exception e) {
+            logger.errorf(e, "Failed to fetch item: %d", id);
+            return Response.serverError().entity("{\"error\": \"Failed to fetch item from database.\"}").build();
+        }
+    }
+
+    /**
+     * Полная выгрузка каталога одним ответом. Доступна только при magazine.items.unbounded-list.enabled=true.
+     */
     public Response getAll() {
         logger.debug("Attempting to fetch all items");
+        if (!unboundedListEnabled) {
+            logger.warn("Rejected unbounded items listing: magazine.items.unbounded-list.enabled is false");
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Unbounded listing is disabled, use ?after=<id>&limit=<n>\"}")
+                    .build();
+        }
         try {
-            List<Item> items = Item.listAll();
-            List<ItemResponseDTO> dtos = items.stream()
-                    .map(this::mapToDto)
-                    .collect(Collectors.toList());
-            logger.infof("Found %d items", dtos.size());
+            List<ItemResponseDTO> dtos = itemCache.page(null, null, () -> {
+                ItemPageDTO all = new ItemPageDTO();
+                all.items = Item.<Item>listAll(Sort.by("id")).stream()
+                        .map(this::mapToDto)
+                        .collect(Collectors.toList());
+                return all;
+            }).items;
+            logger.debugf("Found %d items", dtos.size());
             return Response.ok(dtos).build();
         } catch (Exception e) {
             logger.error("Failed to fetch items", e);
@@ -48,8 +191,9 @@ public class ItemService {
             }
             item.name = item.name.trim();
 
-            if (Item.find("name", item.name).count() > 0) {
+            if (searchIndex.idByName(item.name) != null) {
                 logger.warnf("Item creation failed: item with name '%s' already exists", item.name);
+                shopMetrics.itemConflict(ItemConflict.NAME);
                 return Response.status(Response.Status.CONFLICT) // 409 Conflict более подходит
                         .entity("{\"error\": \"Товар с таким именем уже существует\"}")
                         .build();
@@ -66,11 +210,20 @@ public class ItemService {
             }
 
             item.persist();
+            Item.flush(); // параллельная вставка того же имени, которой еще нет в индексе, упадет здесь
+            itemsChanged.fire(ItemsChangedEvent.named(ItemsChangedEvent.Kind.CREATED, item.id, item.name));
             logger.infof("Successfully created item with ID: %d, Name: '%s'", item.id, item.name);
             ItemResponseDTO dto = mapToDto(item);
             return Response.status(Response.Status.CREATED).entity(dto).build();
 
         } catch (Exception e) {
+            if (TransactionRetry.isConstraintViolation(e)) {
+                logger.warnf("Item creation failed: item with name '%s' was created concurrently", item.name);
+                shopMetrics.itemConflict(ItemConflict.NAME);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\": \"Товар с таким именем уже существует\"}")
+                        .build();
+            }
             logger.error("Unexpected error during item creation", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("{\"error\": \"Internal server error during item creation.\", \"details\": \"" + e.getMessage() + "\"}")
@@ -78,81 +231,115 @@ public class ItemService {
         }
     }
 
-    @Transactional
+    /**
+     * Обновляет товар с оптимистической блокировкой по Item.version.
+     * Если клиент прислал version, она должна совпадать с текущей (иначе 409);
+     * конфликты с параллельными изменениями склада повторяются через TransactionRetry.
+     */
     public Response update(Long id, Item updatedItem) {
         logger.debugf("Attempting to update item with ID: %d", id);
+        if (updatedItem == null) {
+            logger.warnf("Update item failed for ID %d: received null request body", id);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Request body cannot be empty\"}").build();
+        }
         try {
-            if (updatedItem == null) {
-                logger.warnf("Update item failed for ID %d: received null request body", id);
-                return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Request body cannot be empty\"}").build();
+            return transactionRetry.call("item update", () -> doUpdate(id, updatedItem));
+        } catch (Exception e) {
+            if (TransactionRetry.isConstraintViolation(e)) {
+                logger.warnf("Update item failed for ID %d: item name '%s' was taken concurrently", id, updatedItem.name);
+                shopMetrics.itemConflict(ItemConflict.NAME);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\": \"Товар с таким именем уже существует\"}")
+                        .build();
             }
-
-            Item item = Item.findById(id);
-            if (item == null) {
-                logger.warnf("Update item failed: item with ID %d not found", id);
-                return Response.status(Response.Status.NOT_FOUND).entity("{\"error\": \"Item not found\"}").build();
+            if (TransactionRetry.isTransient(e)) {
+                logger.warnf("Update item failed for ID %d: concurrent modification", id);
+                shopMetrics.itemConflict(ItemConflict.CONCURRENT);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\": \"Item was modified concurrently, please retry\"}")
+                        .build();
             }
+            logger.errorf(e, "Unexpected error during item update for ID: %d", id);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Internal server error during item update.\", \"details\": \"" + e.getMessage() + "\"}")
+                    .build();
+        }
+    }
 
-            logger.debugf("Found item %d for update. Current state: Name='%s', Quantity=%d, Price=%.2f",
-                    id, item.name, (Object) item.quantity, (Object)item.price);
-
-            boolean updated = false;
-
-            if (updatedItem.name != null && !updatedItem.name.trim().isEmpty()) {
-                String newName = updatedItem.name.trim();
-                if (!item.name.equals(newName)) {
-                    if (Item.find("name = ?1 and id != ?2", newName, id).count() > 0) {
-                        logger.warnf("Update item failed for ID %d: item name '%s' already exists for another item", id, newName);
-                        return Response.status(Response.Status.CONFLICT) // 409 Conflict
-                                .entity("{\"error\": \"Товар с таким именем уже существует\"}")
-                                .build();
-                    }
-                    logger.debugf("Updating item %d: name from '%s' to '%s'", id, item.name, newName);
-                    item.name = newName;
-                    updated = true;
-                }
-            } else {
-                logger.warnf("Update item failed for ID %d: name cannot be empty", id);
-                return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Item name is required and cannot be empty\"}").build();
-            }
+    private Response doUpdate(Long id, Item updatedItem) {
+        Item item = Item.findById(id);
+        if (item == null) {
+            logger.warnf("Update item failed: item with ID %d not found", id);
+            return Response.status(Response.Status.NOT_FOUND).entity("{\"error\": \"Item not found\"}").build();
+        }
+
+        if (updatedItem.version != null && !updatedItem.version.equals(item.version)) {
+            logger.warnf("Update item failed for ID %d: stale version %d, current %d", id, updatedItem.version, item.version);
+            shopMetrics.itemConflict(ItemConflict.VERSION);
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("{\"error\": \"Item was modified by someone else, reload and retry\"}")
+                    .build();
+        }
+
+        logger.debugf("Found item %d for update. Current state: Name='%s', Quantity=%d, Price=%.2f",
+                id, item.name, (Object) item.quantity, (Object)item.price);
+
+        boolean updated = false;
 
-            if (updatedItem.quantity >= 0) {
-                if (item.quantity != updatedItem.quantity) {
-                    logger.debugf("Updating item %d: quantity from %d to %d", id, (Object) item.quantity, (Object) updatedItem.quantity);
-                    item.quantity = updatedItem.quantity;
-                    updated = true;
+        if (updatedItem.name != null && !updatedItem.name.trim().isEmpty()) {
+            String newName = updatedItem.name.trim();
+            if (!item.name.equals(newName)) {
+                Long owner = searchIndex.idByName(newName);
+                if (owner != null && !owner.equals(id)) {
+                    logger.warnf("Update item failed for ID %d: item name '%s' already exists for another item", id, newName);
+                    shopMetrics.itemConflict(ItemConflict.NAME);
+                    return Response.status(Response.Status.CONFLICT) // 409 Conflict
+                            .entity("{\"error\": \"Товар с таким именем уже существует\"}")
+                            .build();
                 }
-            } else {
-                logger.warnf("Update item failed for ID %d: quantity must be >= 0. Received: %d", id, (Object) updatedItem.quantity);
-                return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Quantity must be non-negative\"}").build();
+                logger.debugf("Updating item %d: name from '%s' to '%s'", id, item.name, newName);
+                item.name = newName;
+                updated = true;
             }
+        } else {
+            logger.warnf("Update item failed for ID %d: name cannot be empty", id);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Item name is required and cannot be empty\"}").build();
+        }
 
-            if (updatedItem.price >= 0) {
-                if (item.price != updatedItem.price) {
-                    logger.debugf("Updating item %d: price from %.2f to %.2f", id, (Object) item.price, (Object) updatedItem.price);
-                    item.price = updatedItem.price;
-                    updated = true;
-                }
-            } else {
-                logger.warnf("Update item failed for ID %d: price must be >= 0. Received: %.2f", id, (Object) updatedItem.price);
-                return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Price must be non-negative\"}").build();
+        if (updatedItem.quantity >= 0) {
+            if (item.quantity != updatedItem.quantity) {
+                logger.debugf("Updating item %d: quantity from %d to %d", id, (Object) item.quantity, (Object) updatedItem.quantity);
+                item.quantity = updatedItem.quantity;
+                updated = true;
             }
+        } else {
+            logger.warnf("Update item failed for ID %d: quantity must be >= 0. Received: %d", id, (Object) updatedItem.quantity);
+            QuarkusTransaction.setRollbackOnly(); // имя могло быть уже изменено выше
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Quantity must be non-negative\"}").build();
+        }
 
-            if (updated) {
-                logger.infof("Successfully updated item with ID: %d. New state: Name='%s', Quantity=%d, Price=%.2f",
-                        id, item.name, (Object) item.quantity, (Object) item.price);
-            } else {
-                logger.info("Item " + id + " was not updated as no changes were provided or data matched existing values.");
+        if (updatedItem.price >= 0) {
+            if (item.price != updatedItem.price) {
+                logger.debugf("Updating item %d: price from %.2f to %.2f", id, (Object) item.price, (Object) updatedItem.price);
+                item.price = updatedItem.price;
+                updated = true;
             }
-            ItemResponseDTO dto = mapToDto(item);
-            return Response.ok(dto).build();
+        } else {
+            logger.warnf("Update item failed for ID %d: price must be >= 0. Received: %.2f", id, (Object) updatedItem.price);
+            QuarkusTransaction.setRollbackOnly(); // имя могло быть уже изменено выше
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Price must be non-negative\"}").build();
+        }
 
-        } catch (Exception e) {
-            logger.error("Unexpected error during item update for ID: " + id, e);
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity("{\"error\": \"Internal server error during item update.\", \"details\": \"" + e.getMessage() + "\"}")
-                    .build();
+        if (updated) {
+            itemsChanged.fire(ItemsChangedEvent.named(ItemsChangedEvent.Kind.UPDATED, id, item.name));
+            logger.infof("Successfully updated item with ID: %d. New state: Name='%s', Quantity=%d, Price=%.2f",
+                    id, item.name, (Object) item.quantity, (Object) item.price);
+        } else {
+            logger.infof("Item %d was not updated as no changes were provided or data matched existing values.", id);
         }
+        Item.flush(); // проверка версии и её инкремент происходят здесь, до формирования ответа
+        ItemResponseDTO dto = mapToDto(item);
+        return Response.ok(dto).build();
     }
 
     @Transactional
@@ -172,6 +359,7 @@ public class ItemService {
             long orderItemCount = OrderItem.count("item", item);
             if (orderItemCount > 0) {
                 logger.warnf("Attempt to delete item ID %d failed: it is associated with %d order item(s).", id, (Object) orderItemCount);
+                shopMetrics.itemConflict(ItemConflict.IN_USE);
                 return Response.status(Response.Status.CONFLICT) // 409 Conflict - более подходящий статус
                         .entity("{\"error\":\"Cannot delete item: it is part of existing orders.\"}")
                         .build();
@@ -179,19 +367,20 @@ public class ItemService {
 
             String itemName = item.name;
             item.delete();
+            itemsChanged.fire(ItemsChangedEvent.of(ItemsChangedEvent.Kind.DELETED, id));
 
             logger.infof("Successfully deleted item with ID: %d, Name: '%s'", id, itemName);
             return Response.noContent().build();
 
         } catch (Exception e) {
-            logger.error("Unexpected error during item deletion for ID: " + id, e);
+            logger.errorf(e, "Unexpected error during item deletion for ID: %d", id);
 
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("{\"error\":\"Internal server error during item deletion.\"}")
                     .build();
         }
     }
-    private ItemResponseDTO mapToDto(Item item) {
+    ItemResponseDTO mapToDto(Item item) {
         if (item == null) {
             return null;
         }
@@ -200,6 +389,7 @@ public class ItemService {
         dto.name = item.name;
         dto.quantity = item.quantity;
         dto.price = item.price;
+        dto.version = item.version;
         return dto;
     }
 }
\ No newline at end of file
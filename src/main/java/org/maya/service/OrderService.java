@@ -1,16 +1,42 @@
 package org.maya.service;
 
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
-import jakarta.transaction.Transactional;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.maya.dto.*;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.event.OrdersChangedEvent;
+import org.maya.metrics.ShopMetrics;
+import org.maya.metrics.ShopMetrics.OrderOperation;
+import org.maya.metrics.ShopMetrics.OrderOutcome;
 import org.maya.model.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
@@ -19,13 +45,46 @@ public class OrderService {
     @Inject
     Logger logger;
 
+    @Inject
+    TransactionRetry transactionRetry;
+
+    @Inject
+    Validator validator;
+
+    @Inject
+    Event<ItemsChangedEvent> itemsChanged;
+
+    @Inject
+    Event<OrdersChangedEvent> ordersChanged;
+
+    @Inject
+    ShopMetrics shopMetrics;
+
+    @Inject
+    IdempotencyStore idempotencyStore;
+
+    @Inject
+    StockUpdater stockUpdater;
+
+    @ConfigProperty(name = "magazine.orders.batch.max-size", defaultValue = "1000")
+    int maxBatchSize;
+
+    @ConfigProperty(name = "magazine.orders.page.default-size", defaultValue = "50")
+    int defaultPageSize;
+
+    @ConfigProperty(name = "magazine.orders.page.max-size", defaultValue = "500")
+    int maxPageSize;
+
     public Response getAll() {
         try {
-            List<Order> orders = Order.listAll();
+            // Один запрос на все заказы вместе с позициями и товарами (без N+1)
+            List<Order> orders = Order.find(
+                    "select distinct o from Order o left join fetch o.items oi left join fetch oi.item order by o.id")
+                    .list();
             List<OrderResponseDTO> dtos = orders.stream()
                     .map(this::mapToDto) // Используем mapToDto
                     .collect(Collectors.toList());
-            logger.info("Found " + dtos.size() + " orders");
+            logger.debugf("Found %d orders", dtos.size());
             return Response.ok(dtos).build(); // Возвращаем DTO
         } catch (Exception e) {
             logger.error("Failed to fetch orders", e);
@@ -35,191 +94,731 @@ public class OrderService {
 
     public Response getById(Long id) {
         try {
-            Order order = Order.findById(id);
-            if (order == null) {
+            // Без ограничения строк: firstResult() с fetch join коллекции Hibernate применяет в памяти (HHH90003004)
+            Optional<Order> order = Order.<Order>find(
+                    "select o from Order o left join fetch o.items oi left join fetch oi.item where o.id = ?1", id)
+                    .singleResultOptional();
+            if (order.isEmpty()) {
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
-            return Response.ok(mapToDto(order)).build();
+            return Response.ok(mapToDto(order.get())).build();
         } catch (Exception e) {
-            logger.error("Failed to fetch order: " + id, e);
+            logger.errorf(e, "Failed to fetch order: %d", id);
             return Response.serverError().build();
         }
     }
 
-    @Transactional
-    public Response create(OrderRequest request) {
+    /**
+     * Заказы с позициями и товарами по id одним запросом; удаленных заказов в результате нет.
+     */
+    public Map<Long, OrderResponseDTO> findByIds(Collection<Long> ids) {
+        return Order.<Order>find(
+                        "select distinct o from Order o left join fetch o.items oi left join fetch oi.item where o.id in ?1", ids)
+                .stream()
+                .collect(Collectors.toMap(order -> order.id, this::mapToDto));
+    }
+
+    /**
+     * Keyset-пагинация сводок заказов по orders.id: итоги хранятся в самом заказе, order_items не читаются.
+     */
+    public Response getSummaries(Long after, Integer limit) {
+        if (after != null && after < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Cursor must be non-negative\"}").build();
+        }
+        if (limit != null && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"Limit must be positive\"}").build();
+        }
         try {
-            Order order = new Order();
-            order.address = request.address;
+            int pageSize = Math.min(limit == null ? defaultPageSize : limit, maxPageSize);
+            // Берем на одну строку больше, чтобы понять, есть ли следующая страница
+            List<OrderSummaryDTO> rows = Order.getEntityManager()
+                    .createQuery("select new org.maya.dto.OrderSummaryDTO(o.id, o.orderDate, o.address, o.totalAmount, o.lineCount, o.version)"
+                            + " from Order o where o.id > :after order by o.id", OrderSummaryDTO.class)
+                    .setParameter("after", after == null ? 0L : after)
+                    .setMaxResults(pageSize + 1)
+                    .getResultList();
+            OrderSummaryPageDTO page = new OrderSummaryPageDTO();
+            page.orders = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+            page.nextCursor = rows.size() > pageSize ? page.orders.get(pageSize - 1).id : null;
+            return Response.ok(page).build();
+        } catch (Exception e) {
+            logger.error("Failed to fetch order summaries", e);
+            return Response.serverError().entity("{\"error\": \"Failed to fetch orders\"}").build();
+        }
+    }
 
-            for (OrderItemRequest itemReq : request.items) {
-                Item item = Item.findById(itemReq.itemId);
-                if (item == null) {
-                    logger.error("Item not found: " + itemReq.itemId);
-                    return Response.status(404)
-                            .entity("{\"error\":\"Item not found: " + itemReq.itemId + "\"}")
-                            .build();
-                }
+    /**
+     * Версия заказа без загрузки позиций - для ETag; null, если заказа нет.
+     */
+    public Long versionOf(Long id) {
+        return Order.getEntityManager()
+                .createQuery("select o.version from Order o where o.id = :id", Long.class)
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst()
+                .orElse(null);
+    }
 
-                // Проверка наличия достаточного количества товара
-                if (itemReq.quantity > item.quantity) {
-                    return Response.status(400)
-                            .entity("{\"error\":\"Not enough stock for item: " + item.name + "\"}")
-                            .build();
-                }
+    /**
+     * claim - ключ Idempotency-Key, ответ на который записывается в транзакции заказа (null - без записи).
+     */
+    public Response create(OrderRequest request, IdempotencyStore.Claim claim) {
+        String violation = request == null ? "Order cannot be empty" : validate(request);
+        if (violation != null) {
+            shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + violation + "\"}").build();
+        }
+        try {
+            Response response = transactionRetry.call("order creation",
+                    () -> idempotencyStore.withinTransaction(claim, () -> doCreate(request)));
+            if (response.getStatus() == Response.Status.CREATED.getStatusCode() && !IdempotencyStore.isReplayed(response)) {
+                shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.CREATED);
+            }
+            return response;
+        } catch (Exception e) {
+            Response recorded = recordedConcurrently(claim, e);
+            if (recorded != null) {
+                return recorded;
+            }
+            if (TransactionRetry.isTransient(e)) {
+                shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.CONFLICT);
+                logger.warn("Order creation failed: concurrent stock conflict persisted after retries", e);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\":\"Stock was modified concurrently, please retry\"}")
+                        .build();
+            }
+            shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.ERROR);
+            logger.error("Order creation failed", e);
+            return Response.serverError().build();
+        }
+    }
 
-                OrderItem orderItem = new OrderItem();
-                orderItem.item = item;
-                orderItem.quantity = itemReq.quantity;
-                order.addOrderItem(orderItem);
+    private Response doCreate(OrderRequest request) {
+        Order order = new Order();
+        order.address = request.address;
 
-                item.quantity -= itemReq.quantity;
+        Map<Long, Integer> requestedQuantities = mergeLines(request);
+
+        Map<Long, Item> itemsById = loadItems(requestedQuantities.keySet());
+        for (Long itemId : requestedQuantities.keySet()) {
+            if (!itemsById.containsKey(itemId)) {
+                shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.ITEM_NOT_FOUND);
+                logger.errorf("Item not found: %d", itemId);
+                return Response.status(404)
+                        .entity("{\"error\":\"Item not found: " + itemId + "\"}")
+                        .build();
             }
+        }
 
-            order.persist();
-            logger.info("Order created: " + order.id);
-            return Response.status(Response.Status.CREATED).entity(mapToDto(order)).build();
+        // Списание условными UPDATE одним батчем; TreeMap - строки товаров блокируются по возрастанию id
+        SortedMap<Long, Integer> stockAdjustments = new TreeMap<>();
+        requestedQuantities.forEach((itemId, qty) -> stockAdjustments.put(itemId, -qty));
+        List<Long> outOfStock = adjustStock(stockAdjustments);
+        if (!outOfStock.isEmpty()) {
+            QuarkusTransaction.setRollbackOnly(); // возвращаем уже списанные позиции
+            shopMetrics.orderOutcome(OrderOperation.CREATE, OrderOutcome.OUT_OF_STOCK);
+            return Response.status(400)
+                    .entity("{\"error\":\"Not enough stock for item: " + itemsById.get(outOfStock.get(0)).name + "\"}")
+                    .build();
+        }
+
+        addLines(order, requestedQuantities, itemsById);
 
+        order.persist(); // позиции вставляются JDBC-батчами (hibernate.order_inserts + statement-batch-size)
+        ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.CREATED, order.id, order.orderDate));
+        logger.infof("Order created: %d", order.id);
+        return Response.status(Response.Status.CREATED).entity(mapToDto(order)).build();
+    }
+
+    /**
+     * Пакетное создание заказов: все товары пакета читаются и блокируются одним запросом,
+     * остатки распределяются между заказами по порядку, списание агрегируется по товару.
+     * Заказ, не прошедший проверку, получает свой статус ошибки и не мешает остальным.
+     */
+    public Response createBatch(List<OrderRequest> requests, IdempotencyStore.Claim claim) {
+        if (requests == null || requests.isEmpty()) {
+            shopMetrics.orderOutcome(OrderOperation.BATCH, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"Batch must contain at least one order\"}").build();
+        }
+        if (requests.size() > maxBatchSize) {
+            shopMetrics.orderOutcome(OrderOperation.BATCH, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\":\"Batch is too large, max " + maxBatchSize + " orders\"}")
+                    .build();
+        }
+        try {
+            // Исходы последней (закоммиченной) попытки: TransactionRetry может выполнить пакет несколько раз
+            AtomicReference<Map<OrderOutcome, Integer>> outcomes = new AtomicReference<>();
+            Response response = transactionRetry.call("order batch",
+                    () -> idempotencyStore.withinTransaction(claim, () -> {
+                        BatchResult batch = doCreateBatch(requests);
+                        outcomes.set(batch.outcomes());
+                        return Response.ok(batch.result()).build();
+                    }));
+            if (response.getEntity() instanceof OrderBatchResultDTO result) {
+                if (outcomes.get() != null) {
+                    outcomes.get().forEach((outcome, count) -> shopMetrics.orderOutcome(OrderOperation.BATCH, outcome, count));
+                }
+                logger.infof("Order batch processed: %d orders, %d created, %d failed", result.total, result.created, result.failed);
+            }
+            return response;
         } catch (Exception e) {
-            logger.error("Order creation failed", e);
+            Response recorded = recordedConcurrently(claim, e);
+            if (recorded != null) {
+                return recorded;
+            }
+            if (TransactionRetry.isTransient(e)) {
+                shopMetrics.orderOutcome(OrderOperation.BATCH, OrderOutcome.CONFLICT, requests.size());
+                logger.warn("Order batch failed: concurrent stock conflict persisted after retries", e);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\":\"Stock was modified concurrently, please retry\"}")
+                        .build();
+            }
+            shopMetrics.orderOutcome(OrderOperation.BATCH, OrderOutcome.ERROR, requests.size());
+            logger.error("Order batch failed", e);
             return Response.serverError().build();
         }
     }
 
-    @Transactional
+    /** Итог пакета для ответа и число заказов по каждому исходу для метрик. */
+    private record BatchResult(OrderBatchResultDTO result, Map<OrderOutcome, Integer> outcomes) {
+    }
+
+    private BatchResult doCreateBatch(List<OrderRequest> requests) {
+        OrderBatchResultDTO result = new OrderBatchResultDTO();
+        result.total = requests.size();
+        Map<OrderOutcome, Integer> outcomes = new EnumMap<>(OrderOutcome.class);
+
+        List<Map<Long, Integer>> linesPerOrder = new ArrayList<>(requests.size());
+        Set<Long> allItemIds = new TreeSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            OrderBatchEntryDTO entry = new OrderBatchEntryDTO();
+            entry.index = i;
+            result.results.add(entry);
+
+            OrderRequest request = requests.get(i);
+            String violation = request == null ? "Order cannot be empty" : validate(request);
+            if (violation != null) {
+                entry.status = Response.Status.BAD_REQUEST.getStatusCode();
+                outcomes.merge(OrderOutcome.INVALID, 1, Integer::sum);
+                entry.error = violation;
+                linesPerOrder.add(null);
+                continue;
+            }
+            Map<Long, Integer> lines = mergeLines(request);
+            linesPerOrder.add(lines);
+            allItemIds.addAll(lines.keySet());
+        }
+
+        // Блокируем все товары пакета по возрастанию id: остатки ниже не изменятся до конца транзакции
+        Map<Long, Item> itemsById = allItemIds.isEmpty() ? Map.of() : Item.<Item>find("id in ?1", Sort.by("id"), allItemIds)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .list().stream()
+                .collect(Collectors.toMap(item -> item.id, item -> item));
+        Map<Long, Integer> available = new HashMap<>();
+        itemsById.forEach((itemId, item) -> available.put(itemId, item.quantity));
+
+        SortedMap<Long, Integer> stockAdjustments = new TreeMap<>();
+        List<Order> created = new ArrayList<>();
+        List<OrderBatchEntryDTO> createdEntries = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Map<Long, Integer> lines = linesPerOrder.get(i);
+            if (lines == null) {
+                continue;
+            }
+            OrderBatchEntryDTO entry = result.results.get(i);
+            for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+                Item item = itemsById.get(line.getKey());
+                if (item == null) {
+                    entry.status = Response.Status.NOT_FOUND.getStatusCode();
+                    outcomes.merge(OrderOutcome.ITEM_NOT_FOUND, 1, Integer::sum);
+                    entry.error = "Item not found: " + line.getKey();
+                    break;
+                }
+                if (available.get(item.id) < line.getValue()) {
+                    entry.status = Response.Status.BAD_REQUEST.getStatusCode();
+                    outcomes.merge(OrderOutcome.OUT_OF_STOCK, 1, Integer::sum);
+                    entry.error = "Not enough stock for item: " + item.name;
+                    break;
+                }
+            }
+            if (entry.status != 0) {
+                continue;
+            }
+
+            lines.forEach((itemId, qty) -> {
+                available.merge(itemId, -qty, Integer::sum);
+                stockAdjustments.merge(itemId, -qty, Integer::sum);
+            });
+            Order order = new Order();
+            order.address = requests.get(i).address;
+            addLines(order, lines, itemsById);
+            created.add(order);
+            createdEntries.add(entry);
+        }
+
+        // Одно условное списание на товар за весь пакет
+        List<Long> outOfStock = adjustStock(stockAdjustments);
+        if (!outOfStock.isEmpty()) {
+            // товары заблокированы, значит остатки изменил кто-то в обход блокировок - повторяем пакет целиком
+            // (OptimisticLockException TransactionRetry считает временным конфликтом)
+            throw new OptimisticLockException("Stock changed under lock for items " + outOfStock);
+        }
+
+        for (int i = 0; i < created.size(); i++) {
+            Order order = created.get(i);
+            order.persist();
+            createdEntries.get(i).status = Response.Status.CREATED.getStatusCode();
+            createdEntries.get(i).order = mapToDto(order);
+        }
+        if (!created.isEmpty()) {
+            ordersChanged.fire(new OrdersChangedEvent(OrdersChangedEvent.Kind.CREATED,
+                    created.stream().map(order -> order.id).collect(Collectors.toSet()),
+                    created.stream().map(order -> order.orderDate.toLocalDate()).collect(Collectors.toSet())));
+        }
+        if (!created.isEmpty()) {
+            outcomes.merge(OrderOutcome.CREATED, created.size(), Integer::sum);
+        }
+        result.created = created.size();
+        result.failed = result.total - result.created;
+        return new BatchResult(result, outcomes);
+    }
+
+    /**
+     * Ответ запроса с тем же Idempotency-Key, закоммиченный другим экземпляром, пока выполнялся наш:
+     * наша транзакция откатилась на первичном ключе idempotency_keys. null - сбой другой природы.
+     */
+    private Response recordedConcurrently(IdempotencyStore.Claim claim, Exception e) {
+        if (claim == null || !TransactionRetry.isConstraintViolation(e)) {
+            return null;
+        }
+        Response recorded = idempotencyStore.recorded(claim);
+        if (recorded != null) {
+            logger.infof("Order request with Idempotency-Key %s completed concurrently elsewhere", claim.key());
+        }
+        return recorded;
+    }
+
+    /**
+     * Количество каждого товара в заказе (повторы суммируются); позиции удаленных товаров пропускаются.
+     */
+    static Map<Long, Integer> orderedQuantities(Order order) {
+        return order.items.stream()
+                .filter(oi -> oi.item != null) // Пропускаем, если товар был удален
+                .collect(Collectors.toMap(oi -> oi.item.id, oi -> oi.quantity, Integer::sum));
+    }
+
+    /**
+     * Повторы одного товара сливаются в одну позицию; порядок позиций - как в запросе.
+     */
+    static Map<Long, Integer> mergeLines(OrderRequest request) {
+        return request.items.stream()
+                .collect(Collectors.toMap(req -> req.itemId, req -> req.quantity, Integer::sum, LinkedHashMap::new));
+    }
+
+    /**
+     * Добавляет позиции по текущим ценам товаров и пересчитывает итоги заказа.
+     */
+    private static void addLines(Order order, Map<Long, Integer> quantities, Map<Long, Item> itemsById) {
+        quantities.forEach((itemId, qty) -> addLine(order, itemsById.get(itemId), qty));
+        order.recalculateTotals();
+    }
+
+    private static void addLine(Order order, Item item, int quantity) {
+        OrderItem orderItem = new OrderItem();
+        orderItem.item = item;
+        orderItem.quantity = quantity;
+        orderItem.unitPrice = item.price;
+        order.addOrderItem(orderItem);
+    }
+
+    /**
+     * Приводит позиции заказа к quantities, трогая только отличающиеся строки: количество меняется на месте
+     * (цена покупки сохраняется), новые товары добавляются по текущей цене, исчезнувшие позиции удаляются
+     * (orphanRemoval), как и позиции удаленных товаров и повторы одного товара. Пересчитывает итоги заказа.
+     */
+    private static void applyLineChanges(Order order, Map<Long, Integer> quantities, Map<Long, Item> itemsById) {
+        Set<Long> kept = new HashSet<>();
+        for (Iterator<OrderItem> lines = order.items.iterator(); lines.hasNext(); ) {
+            OrderItem line = lines.next();
+            Long itemId = line.item == null ? null : line.item.id; // id прокси не требует загрузки товара
+            Integer quantity = itemId == null ? null : quantities.get(itemId);
+            if (quantity == null || !kept.add(itemId)) {
+                lines.remove();
+            } else if (line.quantity != quantity) {
+                line.quantity = quantity; // UPDATE только для изменившихся строк
+            }
+        }
+        quantities.forEach((itemId, quantity) -> {
+            if (!kept.contains(itemId)) {
+                addLine(order, itemsById.get(itemId), quantity);
+            }
+        });
+        order.recalculateTotals();
+    }
+
+    private String validate(OrderRequest request) {
+        if (request.items == null && validator.validate(request).isEmpty()) {
+            return "Order must contain at least one item";
+        }
+        return firstViolation(request);
+    }
+
+    /** Первое (по алфавиту - для стабильности) сообщение Bean Validation или null. */
+    private <T> String firstViolation(T request) {
+        return validator.validate(request).stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Применяет изменения склада и сообщает о них наблюдателям (кэш каталога и т.п.) после коммита.
+     */
+    private List<Long> adjustStock(SortedMap<Long, Integer> stockAdjustments) {
+        List<Long> failed = stockUpdater.adjust(stockAdjustments);
+        if (!stockAdjustments.isEmpty()) {
+            itemsChanged.fire(new ItemsChangedEvent(ItemsChangedEvent.Kind.STOCK_CHANGED, stockAdjustments.keySet()));
+        }
+        return failed;
+    }
+
+    /**
+     * Загружает товары одним запросом id in (...).
+     */
+    private Map<Long, Item> loadItems(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return Item.<Item>list("id in ?1", ids).stream()
+                .collect(Collectors.toMap(item -> item.id, item -> item));
+    }
+
     public Response update(Long id, OrderRequest request) {
+        String violation = request == null ? "Order cannot be empty" : validate(request);
+        if (violation != null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + violation + "\"}").build();
+        }
+        return modify(OrderOperation.UPDATE, "order update", id, () -> doUpdate(id, request));
+    }
+
+    /**
+     * Изменение существующего заказа в транзакции с повторами; 200 считается исходом UPDATED.
+     */
+    private Response modify(OrderOperation operation, String description, Long id, Supplier<Response> work) {
         try {
-            Order order = Order.findById(id);
-            if (order == null) {
-                return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Order not found\"}").build();
+            Response response = transactionRetry.call(description, work);
+            if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                shopMetrics.orderOutcome(operation, OrderOutcome.UPDATED);
+            }
+            return response;
+        } catch (Exception e) {
+            if (TransactionRetry.isTransient(e)) {
+                shopMetrics.orderOutcome(operation, OrderOutcome.CONFLICT);
+                logger.warnf(e, "%s failed: concurrent stock conflict persisted after retries: %d", description, id);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\":\"Order or stock was modified concurrently, please retry\"}")
+                        .build();
             }
+            shopMetrics.orderOutcome(operation, OrderOutcome.ERROR);
+            logger.errorf(e, "Failed %s: %d", description, id);
+            return Response.serverError().entity("{\"error\": \"Internal server error during " + description + "\", \"details\": \"" + e.getMessage() + "\"}").build();
+        }
+    }
 
-            // 1. Собираем старые количества по ID товара
-            Map<Long, Integer> oldItemQuantities = order.items.stream()
-                    .filter(oi -> oi.item != null) // Пропускаем, если товар был удален
-                    .collect(Collectors.toMap(oi -> oi.item.id, oi -> oi.quantity));
+    private Response doUpdate(Long id, OrderRequest request) {
+        // Сначала блокируем заказ, затем товары по возрастанию id - единый порядок блокировок исключает взаимоблокировки.
+        Order order = Order.findById(id, LockModeType.PESSIMISTIC_WRITE);
+        if (order == null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE, OrderOutcome.ORDER_NOT_FOUND);
+            return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Order not found\"}").build();
+        }
 
-            // 2. Собираем новые по ID товара
-            Map<Long, Integer> newItemQuantities = request.items.stream()
-                    .collect(Collectors.toMap(req -> req.itemId, req -> req.quantity, Integer::sum)); // Суммируем, если один товар добавлен несколько раз
+        // 1. Собираем старые количества по ID товара
+        Map<Long, Integer> oldItemQuantities = orderedQuantities(order);
 
-            // 3. Проверяем доступность и рассчитываем дельту для склада
-            Map<Long, Integer> stockAdjustments = new HashMap<>(); // itemId -> delta (положительная - вернуть на склад, отрицательная - списать)
+        // 2. Собираем новые по ID товара (суммируем, если один товар добавлен несколько раз)
+        Map<Long, Integer> newItemQuantities = mergeLines(request);
 
-            for (OrderItem orderItem : order.items) {
-                if (orderItem.item != null) {
-                    long itemId = orderItem.item.id;
-                    if (!newItemQuantities.containsKey(itemId)) {
-                        stockAdjustments.put(itemId, oldItemQuantities.getOrDefault(itemId, 0));
-                    }
-                }
+        Map<Long, Item> itemsById = loadItems(newItemQuantities.keySet());
+        for (Long itemId : newItemQuantities.keySet()) {
+            if (!itemsById.containsKey(itemId)) {
+                shopMetrics.orderOutcome(OrderOperation.UPDATE, OrderOutcome.ITEM_NOT_FOUND);
+                return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Item not found: " + itemId + "\"}").build();
             }
+        }
 
-            // Теперь проходим по новым товарам для проверки и расчета списания/корректировки
-            for (OrderItemRequest itemReq : request.items) {
-                Item item = Item.findById(itemReq.itemId);
-                if (item == null) {
-                    return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Item not found: " + itemReq.itemId + "\"}").build();
-                }
-
-                int oldQty = oldItemQuantities.getOrDefault(itemReq.itemId, 0);
-                int newQty = itemReq.quantity;
-                int delta = newQty - oldQty; // > 0: нужно больше, < 0: нужно меньше, = 0: без изменений
-
-                // Сколько нужно *дополнительно* взять со склада
-                int neededFromStock = Math.max(0, delta);
-
-                // Проверяем, достаточно ли *текущего* остатка + того, что вернется от других позиций этого же товара (если он был)
-                int alreadyReturned = stockAdjustments.getOrDefault(item.id, 0);
-                if (item.quantity + alreadyReturned < neededFromStock) {
-                    // Немедленно возвращаем транзакцию, если не хватает
-                    return Response.status(Response.Status.BAD_REQUEST)
-                            .entity("{\"error\":\"Not enough stock for item: " + item.name + ". Required additional: " + neededFromStock
-                                    + ", Available (current + returning): " + (item.quantity + alreadyReturned) + "\"}")
-                            .build();
-                }
-                // Записываем итоговое изменение для этого товара
-                // Если delta > 0, списываем (отрицательное значение). Если delta < 0, возвращаем (положительное).
-                stockAdjustments.put(item.id, stockAdjustments.getOrDefault(item.id, 0) - delta);
+        // 3. Рассчитываем дельту для склада и применяем её атомарно в БД одним батчем, по возрастанию id
+        SortedMap<Long, Integer> stockAdjustments = computeStockAdjustments(oldItemQuantities, newItemQuantities);
+        for (Long itemId : adjustStock(stockAdjustments)) {
+            int delta = stockAdjustments.get(itemId); // > 0 - вернуть на склад, < 0 - списать
+            if (delta > 0) {
+                logger.warnf("Item with id %d not found during stock adjustment for order %d update.", itemId, id);
+                continue;
             }
+            QuarkusTransaction.setRollbackOnly(); // отменяем уже примененные корректировки
+            shopMetrics.orderOutcome(OrderOperation.UPDATE, OrderOutcome.OUT_OF_STOCK);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\":\"Not enough stock for item: " + itemsById.get(itemId).name
+                            + ". Required additional: " + (-delta) + "\"}")
+                    .build();
+        }
 
+        // 4. Меняем только отличающиеся позиции: запись и блокировки пропорциональны изменению, а не размеру заказа
+        String oldAddress = order.address;
+        double oldTotal = order.totalAmount;
+        int oldLineCount = order.lineCount;
+        order.address = request.address; // Обновляем адрес
+        applyLineChanges(order, newItemQuantities, itemsById);
+        incrementVersionIfUnchanged(order, oldAddress, oldTotal, oldLineCount);
+
+        Order.flush(); // инкремент версии происходит здесь, до формирования ответа
+        ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.UPDATED, order.id, order.orderDate));
+        logger.infof("Order updated: %d", order.id);
+        return Response.ok(mapToDto(order)).build(); // Возвращаем DTO
+    }
 
-            // 4. Обновляем склад
-            for (Map.Entry<Long, Integer> entry : stockAdjustments.entrySet()) {
-                Item item = Item.findById(entry.getKey());
-                if (item != null) {
-                    item.quantity += entry.getValue();
-                    if(item.quantity < 0) {
-                        logger.errorf("Stock calculation error for item %d resulted in negative quantity: %d", item.id, item.quantity);
-                        throw new IllegalStateException("Stock calculation error resulted in negative quantity for item " + item.id);
-                    }
-                } else {
-                    logger.warnf("Item with id %d not found during stock adjustment for order %d update.", entry.getKey(), id);
-                }
+    /**
+     * Строка заказа не изменилась, а изменения позиций версию не увеличивают - увеличиваем её явно,
+     * чтобы сменился ETag. Иначе версию увеличит UPDATE итогов заказа - без лишнего выражения.
+     */
+    private static void incrementVersionIfUnchanged(Order order, String oldAddress, double oldTotal, int oldLineCount) {
+        if (Objects.equals(oldAddress, order.address) && oldTotal == order.totalAmount && oldLineCount == order.lineCount) {
+            Order.getEntityManager().lock(order, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+        }
+    }
+
+    /**
+     * PUT /api/orders/{id}/items/{itemId}: количество товара в заказе; позиции нет - добавляется по текущей цене.
+     * Пишутся только строка позиции, остаток одного товара и итоги заказа; остальные позиции не читаются.
+     */
+    public Response updateLine(Long id, Long itemId, OrderLineRequest request) {
+        String violation = request == null ? "Request body cannot be empty" : firstViolation(request);
+        if (violation != null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE_LINE, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + violation + "\"}").build();
+        }
+        return modify(OrderOperation.UPDATE_LINE, "order line update", id, () -> doUpdateLine(id, itemId, request.quantity));
+    }
+
+    private Response doUpdateLine(Long id, Long itemId, int quantity) {
+        // Тот же порядок блокировок, что в doUpdate: заказ, затем строка товара
+        Order order = Order.findById(id, LockModeType.PESSIMISTIC_WRITE);
+        if (order == null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE_LINE, OrderOutcome.ORDER_NOT_FOUND);
+            return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Order not found\"}").build();
+        }
+        List<OrderItem> lines = linesOf(id, itemId);
+        int oldQuantity = lines.stream().mapToInt(line -> line.quantity).sum();
+        if (lines.size() == 1 && oldQuantity == quantity) {
+            return Response.ok(summaryOf(order)).build();
+        }
+
+        Item item = lines.isEmpty() ? Item.findById(itemId) : null; // цена нужна только новой позиции
+        if (lines.isEmpty() && item == null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE_LINE, OrderOutcome.ITEM_NOT_FOUND);
+            return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Item not found: " + itemId + "\"}").build();
+        }
+
+        SortedMap<Long, Integer> stockAdjustments = computeStockAdjustments(Map.of(itemId, oldQuantity), Map.of(itemId, quantity));
+        if (!adjustStock(stockAdjustments).isEmpty()) {
+            int delta = stockAdjustments.get(itemId);
+            if (delta < 0) {
+                QuarkusTransaction.setRollbackOnly();
+                shopMetrics.orderOutcome(OrderOperation.UPDATE_LINE, OrderOutcome.OUT_OF_STOCK);
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\":\"Not enough stock for item: " + (item != null ? item : lines.get(0).item).name
+                                + ". Required additional: " + (-delta) + "\"}")
+                        .build();
             }
+            logger.warnf("Item with id %d not found during stock adjustment for order %d line update.", itemId, id);
+        }
 
-            // 5. Очищаем старые элементы и добавляем новые
-            order.items.clear(); // orphanRemoval=true позаботится об удалении старых OrderItem
-            order.address = request.address; // Обновляем адрес
-            for (OrderItemRequest itemReq : request.items) {
-                Item item = Item.findById(itemReq.itemId); // Уже проверили, что он не null
-                OrderItem orderItem = new OrderItem();
-                orderItem.item = item;
-                orderItem.quantity = itemReq.quantity;
-                order.addOrderItem(orderItem); // Добавляем новый OrderItem
+        String oldAddress = order.address;
+        double oldTotal = order.totalAmount;
+        int oldLineCount = order.lineCount;
+        OrderItem line;
+        if (lines.isEmpty()) {
+            line = new OrderItem();
+            line.order = order; // коллекция order.items не загружается
+            line.item = item;
+            line.unitPrice = item.price;
+            line.persist();
+            order.lineCount++;
+        } else {
+            line = lines.get(0);
+            order.totalAmount -= line.lineAmount();
+            for (OrderItem duplicate : lines.subList(1, lines.size())) { // повторы товара сливаются в одну позицию
+                order.totalAmount -= duplicate.lineAmount();
+                order.lineCount--;
+                duplicate.delete();
             }
+        }
+        line.quantity = quantity;
+        order.totalAmount += line.lineAmount();
+        incrementVersionIfUnchanged(order, oldAddress, oldTotal, oldLineCount);
+
+        Order.flush();
+        ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.UPDATED, order.id, order.orderDate));
+        logger.infof("Order %d line for item %d set to %d", id, itemId, quantity);
+        return Response.ok(summaryOf(order)).build();
+    }
 
+    /**
+     * DELETE /api/orders/{id}/items/{itemId}: убирает товар из заказа и возвращает его на склад.
+     * Последнюю позицию убрать нельзя - пустых заказов нет, удаляется весь заказ.
+     */
+    public Response deleteLine(Long id, Long itemId) {
+        return modify(OrderOperation.DELETE_LINE, "order line deletion", id, () -> doDeleteLine(id, itemId));
+    }
 
-            logger.info("Order updated: " + order.id);
-            return Response.ok(mapToDto(order)).build(); // Возвращаем DTO
+    private Response doDeleteLine(Long id, Long itemId) {
+        Order order = Order.findById(id, LockModeType.PESSIMISTIC_WRITE);
+        if (order == null) {
+            shopMetrics.orderOutcome(OrderOperation.DELETE_LINE, OrderOutcome.ORDER_NOT_FOUND);
+            return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Order not found\"}").build();
+        }
+        List<OrderItem> lines = linesOf(id, itemId);
+        if (lines.isEmpty()) {
+            shopMetrics.orderOutcome(OrderOperation.DELETE_LINE, OrderOutcome.LINE_NOT_FOUND);
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("{\"error\":\"Item " + itemId + " is not in order " + id + "\"}")
+                    .build();
+        }
+        if (order.lineCount <= lines.size()) {
+            shopMetrics.orderOutcome(OrderOperation.DELETE_LINE, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\":\"Order must contain at least one item, delete the order instead\"}")
+                    .build();
+        }
 
-        } catch (Exception e) {
-            logger.error("Failed to update order: " + id, e);
-            return Response.serverError().entity("{\"error\": \"Internal server error during order update\", \"details\": \"" + e.getMessage() + "\"}").build();
+        int returned = lines.stream().mapToInt(line -> line.quantity).sum();
+        if (!adjustStock(new TreeMap<>(Map.of(itemId, returned))).isEmpty()) {
+            logger.warnf("Item with id %d not found during stock adjustment for order %d line deletion.", itemId, id);
+        }
+        for (OrderItem line : lines) {
+            order.totalAmount -= line.lineAmount();
+            order.lineCount--;
+            line.delete();
         }
+
+        Order.flush();
+        ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.UPDATED, order.id, order.orderDate));
+        logger.infof("Item %d removed from order %d", itemId, id);
+        return Response.ok(summaryOf(order)).build();
     }
 
-    @Transactional
-    public Response delete(Long id) {
-        try {
-            Order order = Order.findById(id);
+    /**
+     * PATCH /api/orders/{id}: меняет только адрес; позиции и склад не затрагиваются.
+     */
+    public Response updateAddress(Long id, OrderPatchRequest request) {
+        String violation = request == null ? "Request body cannot be empty" : firstViolation(request);
+        if (violation != null) {
+            shopMetrics.orderOutcome(OrderOperation.UPDATE_ADDRESS, OrderOutcome.INVALID);
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + violation + "\"}").build();
+        }
+        return modify(OrderOperation.UPDATE_ADDRESS, "order address update", id, () -> {
+            Order order = Order.findById(id, LockModeType.PESSIMISTIC_WRITE);
             if (order == null) {
-                return Response.status(404).build();
+                shopMetrics.orderOutcome(OrderOperation.UPDATE_ADDRESS, OrderOutcome.ORDER_NOT_FOUND);
+                return Response.status(Response.Status.NOT_FOUND).entity("{\"error\":\"Order not found\"}").build();
             }
-
-            // Возвращаем товары на склад
-            for (OrderItem orderItem : order.items) {
-                if (orderItem.item != null) {
-                    orderItem.item.quantity += orderItem.quantity;
-                }
+            if (!request.address.equals(order.address)) {
+                order.address = request.address;
+                Order.flush();
+                ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.UPDATED, order.id, order.orderDate));
+                logger.infof("Order %d address updated", id);
             }
+            return Response.ok(summaryOf(order)).build();
+        });
+    }
 
-            order.delete();
-            logger.info("Order deleted: " + id);
-            return Response.noContent().build();
+    /** Позиции товара в заказе; больше одной бывает только у заказов, созданных до слияния повторов. */
+    private static List<OrderItem> linesOf(Long orderId, Long itemId) {
+        return OrderItem.list("order.id = ?1 and item.id = ?2 order by id", orderId, itemId);
+    }
 
+    private static OrderSummaryDTO summaryOf(Order order) {
+        return new OrderSummaryDTO(order.id, order.orderDate, order.address, order.totalAmount, order.lineCount, order.version);
+    }
+
+    /**
+     * Изменение склада при замене позиций заказа: itemId -> delta
+     * (положительная - вернуть на склад, отрицательная - списать). Нулевые дельты не включаются,
+     * ключи упорядочены по возрастанию id - в этом порядке строки товаров и блокируются.
+     */
+    static SortedMap<Long, Integer> computeStockAdjustments(Map<Long, Integer> oldItemQuantities,
+                                                            Map<Long, Integer> newItemQuantities) {
+        SortedMap<Long, Integer> stockAdjustments = new TreeMap<>();
+        oldItemQuantities.forEach((itemId, qty) -> stockAdjustments.merge(itemId, qty, Integer::sum));
+        newItemQuantities.forEach((itemId, qty) -> stockAdjustments.merge(itemId, -qty, Integer::sum));
+        stockAdjustments.values().removeIf(delta -> delta == 0);
+        return stockAdjustments;
+    }
+
+    public Response delete(Long id) {
+        try {
+            Response response = transactionRetry.call("order deletion", () -> doDelete(id));
+            if (response.getStatus() == Response.Status.NO_CONTENT.getStatusCode()) {
+                shopMetrics.orderOutcome(OrderOperation.DELETE, OrderOutcome.DELETED);
+            }
+            return response;
         } catch (Exception e) {
-            logger.error("Failed to delete order: " + id, e);
+            if (TransactionRetry.isTransient(e)) {
+                shopMetrics.orderOutcome(OrderOperation.DELETE, OrderOutcome.CONFLICT);
+                logger.warnf(e, "Order deletion failed: concurrent stock conflict persisted after retries: %d", id);
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\":\"Order or stock was modified concurrently, please retry\"}")
+                        .build();
+            }
+            shopMetrics.orderOutcome(OrderOperation.DELETE, OrderOutcome.ERROR);
+            logger.errorf(e, "Failed to delete order: %d", id);
             return Response.serverError().build();
         }
     }
 
-    private OrderResponseDTO mapToDto(Order order) {
+    private Response doDelete(Long id) {
+        Order order = Order.findById(id, LockModeType.PESSIMISTIC_WRITE);
+        if (order == null) {
+            shopMetrics.orderOutcome(OrderOperation.DELETE, OrderOutcome.ORDER_NOT_FOUND);
+            return Response.status(404).build();
+        }
+
+        // Возвращаем товары на склад: одно атомарное увеличение на товар, по возрастанию id
+        SortedMap<Long, Integer> returns = new TreeMap<>();
+        for (OrderItem orderItem : order.items) {
+            if (orderItem.item != null) {
+                returns.merge(orderItem.item.id, orderItem.quantity, Integer::sum);
+            }
+        }
+        adjustStock(returns);
+
+        order.delete();
+        ordersChanged.fire(OrdersChangedEvent.of(OrdersChangedEvent.Kind.DELETED, id, order.orderDate));
+        logger.infof("Order deleted: %d", id);
+        return Response.noContent().build();
+    }
+
+    OrderResponseDTO mapToDto(Order order) {
         OrderResponseDTO dto = new OrderResponseDTO();
         dto.id = order.id;
         dto.orderDate = order.orderDate;
         dto.address = order.address;
+        dto.version = order.version;
+        dto.totalAmount = order.totalAmount;
+        dto.lineCount = order.lineCount;
         dto.items = order.items.stream()
                 .map(oi -> {
                     OrderItemResponseDTO itemDto = new OrderItemResponseDTO();
                     if (oi.item != null) {  // Проверка на null!
                         itemDto.itemId = oi.item.id;
                         itemDto.itemName = oi.item.name;
-                        itemDto.price = oi.item.price;
                     } else {
                         itemDto.itemName = "[Товар удален]";
-                        itemDto.price = 0.0;
                     }
+                    itemDto.price = oi.unitPrice; // цена на момент заказа
                     itemDto.quantity = oi.quantity;
                     return itemDto;
                 })
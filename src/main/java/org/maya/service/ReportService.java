@@ -0,0 +1,200 @@
+package org.maya.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.maya.dto.SalesReportDTO;
+import org.maya.dto.SalesReportRowDTO;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.event.OrdersChangedEvent;
+import org.maya.model.Order;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отчет о продажах: штуки и выручка по товарам или по дням за период [from, to].
+ * Считается агрегирующим запросом в БД по ценам на момент заказа (order_items.unit_price),
+ * сущности Order не загружаются. Отчеты за закрытые периоды (to раньше сегодняшнего дня) кэшируются
+ * и сбрасываются после коммита изменений заказов с датой внутри периода; изменение товара
+ * (название в отчете по товарам) сбрасывает все отчеты.
+ */
+@ApplicationScoped
+public class ReportService {
+
+    public enum GroupBy {
+        ITEM,
+        DAY
+    }
+
+    record ReportKey(LocalDate from, LocalDate to, GroupBy groupBy) {
+    }
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "magazine.reports.default-days", defaultValue = "30")
+    int defaultDays;
+
+    @ConfigProperty(name = "magazine.reports.cache.maximum-size", defaultValue = "1000")
+    long cacheMaximumSize;
+
+    private Cache<ReportKey, SalesReportDTO> closedReports;
+
+    // Как в ItemCache: отчет, посчитанный до коммита изменения, в кэш не попадет. Инвалидация сначала
+    // меняет поколение, затем сбрасывает отчеты, поэтому повторная проверка после put ловит гонку
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        closedReports = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, closedReports, "magazine.sales-reports");
+    }
+
+    public Response sales(String from, String to, String groupBy) {
+        LocalDate fromDate;
+        LocalDate toDate;
+        GroupBy grouping;
+        try {
+            toDate = to == null || to.isBlank() ? LocalDate.now() : LocalDate.parse(to);
+            fromDate = from == null || from.isBlank() ? toDate.minusDays(defaultDays - 1L) : LocalDate.parse(from);
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Dates must be in ISO format, e.g. 2025-01-31\"}")
+                    .build();
+        }
+        if (fromDate.isAfter(toDate)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"'from' must not be after 'to'\"}").build();
+        }
+        try {
+            grouping = GroupBy.valueOf((groupBy == null ? "item" : groupBy).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\": \"groupBy must be 'item' or 'day'\"}").build();
+        }
+
+        try {
+            ReportKey key = new ReportKey(fromDate, toDate, grouping);
+            SalesReportDTO report;
+            if (toDate.isBefore(LocalDate.now())) {
+                report = closedReports.getIfPresent(key);
+                if (report == null) {
+                    long computedAt = generation.get();
+                    report = compute(key);
+                    if (generation.get() == computedAt) {
+                        closedReports.put(key, report);
+                        // инвалидация между проверкой и put: сброс уже прошел, снимаем отчет сами
+                        if (generation.get() != computedAt) {
+                            closedReports.asMap().remove(key, report);
+                        }
+                    }
+                }
+            } else {
+                report = compute(key); // за текущий день продажи еще идут
+            }
+            return Response.ok(report).build();
+        } catch (Exception e) {
+            logger.errorf(e, "Failed to build sales report %s..%s by %s", fromDate, toDate, grouping);
+            return Response.serverError().entity("{\"error\": \"Failed to build sales report.\"}").build();
+        }
+    }
+
+    private SalesReportDTO compute(ReportKey key) {
+        long started = System.nanoTime();
+        List<SalesReportRowDTO> rows = key.groupBy() == GroupBy.ITEM ? byItem(key) : byDay(key);
+
+        SalesReportDTO report = new SalesReportDTO();
+        report.from = key.from();
+        report.to = key.to();
+        report.groupBy = key.groupBy().name().toLowerCase();
+        report.rows = rows;
+        for (SalesReportRowDTO row : rows) {
+            report.totalUnits += row.units;
+            report.totalRevenue += row.revenue;
+        }
+        logger.debugf("Sales report %s..%s by %s: %d rows in %d ms", key.from(), key.to(), key.groupBy(),
+                rows.size(), (System.nanoTime() - started) / 1_000_000);
+        return report;
+    }
+
+    private List<SalesReportRowDTO> byItem(ReportKey key) {
+        return Order.getEntityManager()
+                .createQuery("select i.id, i.name, sum(oi.quantity), sum(oi.quantity * oi.unitPrice), count(distinct o.id)"
+                        + " from OrderItem oi join oi.order o join oi.item i"
+                        + " where o.orderDate >= :from and o.orderDate < :to"
+                        + " group by i.id, i.name"
+                        + " order by sum(oi.quantity * oi.unitPrice) desc, i.id", Object[].class)
+                .setParameter("from", key.from().atStartOfDay())
+                .setParameter("to", key.to().plusDays(1).atStartOfDay())
+                .getResultList()
+                .stream()
+                .map(row -> {
+                    SalesReportRowDTO dto = row(row[2], row[3], row[4]);
+                    dto.itemId = (Long) row[0];
+                    dto.itemName = (String) row[1];
+                    return dto;
+                })
+                .toList();
+    }
+
+    private List<SalesReportRowDTO> byDay(ReportKey key) {
+        return Order.getEntityManager()
+                .createQuery("select cast(o.orderDate as LocalDate), sum(oi.quantity), sum(oi.quantity * oi.unitPrice), count(distinct o.id)"
+                        + " from OrderItem oi join oi.order o"
+                        + " where o.orderDate >= :from and o.orderDate < :to"
+                        + " group by cast(o.orderDate as LocalDate)"
+                        + " order by cast(o.orderDate as LocalDate)", Object[].class)
+                .setParameter("from", key.from().atStartOfDay())
+                .setParameter("to", key.to().plusDays(1).atStartOfDay())
+                .getResultList()
+                .stream()
+                .map(row -> {
+                    SalesReportRowDTO dto = row(row[1], row[2], row[3]);
+                    dto.day = (LocalDate) row[0];
+                    return dto;
+                })
+                .toList();
+    }
+
+    private static SalesReportRowDTO row(Object units, Object revenue, Object orders) {
+        SalesReportRowDTO dto = new SalesReportRowDTO();
+        dto.units = ((Number) units).longValue();
+        dto.revenue = ((Number) revenue).doubleValue();
+        dto.orders = ((Number) orders).longValue();
+        return dto;
+    }
+
+    void onOrdersChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) OrdersChangedEvent event) {
+        // Новые заказы и правки сегодняшних закрытых периодов не касаются: кэш не сбрасывается на каждом заказе
+        LocalDate today = LocalDate.now();
+        if (event.orderDates.stream().noneMatch(day -> day.isBefore(today))) {
+            return;
+        }
+        generation.incrementAndGet();
+        closedReports.asMap().keySet().removeIf(key -> event.orderDates.stream()
+                .anyMatch(day -> !day.isBefore(key.from()) && !day.isAfter(key.to())));
+    }
+
+    void onItemsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) ItemsChangedEvent event) {
+        if (event.kind == ItemsChangedEvent.Kind.UPDATED) {
+            generation.incrementAndGet();
+            closedReports.invalidateAll();
+        }
+    }
+}
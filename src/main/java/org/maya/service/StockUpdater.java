@@ -0,0 +1,69 @@
+package org.maya.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.resource.jdbc.spi.JdbcObserver;
+import org.maya.model.Item;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Условное изменение остатков товаров одним JDBC-батчем. Hibernate не батчит UPDATE с условием на остаток,
+ * поэтому батч собирается вручную, но готовится и выполняется через JdbcCoordinator текущей сессии:
+ * его видят StatementInspector и слушатели сессии - счетчики SQL запроса и лог медленных запросов.
+ */
+@ApplicationScoped
+public class StockUpdater {
+
+    private static final String ADJUST_STOCK_SQL =
+            "UPDATE items SET quantity = quantity + ?, version = version + 1 WHERE id = ? AND quantity + ? >= 0";
+
+    /**
+     * Изменяет остатки на deltas (отрицательная дельта - списание) в порядке итерации deltas;
+     * остаток не уходит в минус. Возвращает id товаров, строки которых не обновились
+     * (товара нет или остатка недостаточно).
+     */
+    public List<Long> adjust(SortedMap<Long, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+        SessionImplementor session = Item.getEntityManager().unwrap(SessionImplementor.class);
+        JdbcCoordinator jdbc = session.getJdbcCoordinator();
+        JdbcObserver observer = session.getJdbcSessionContext().getObserver();
+        PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(ADJUST_STOCK_SQL);
+        try {
+            for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+                statement.setInt(1, entry.getValue());
+                statement.setLong(2, entry.getKey());
+                statement.setInt(3, entry.getValue());
+                statement.addBatch();
+            }
+            int[] counts;
+            observer.jdbcExecuteBatchStart();
+            try {
+                counts = statement.executeBatch();
+            } finally {
+                observer.jdbcExecuteBatchEnd();
+            }
+            List<Long> failed = new ArrayList<>();
+            int i = 0;
+            for (Long id : deltas.keySet()) {
+                if (counts[i++] == 0) {
+                    failed.add(id);
+                }
+            }
+            return failed;
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "Could not adjust stock", ADJUST_STOCK_SQL);
+        } finally {
+            jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbc.afterStatementExecution();
+        }
+    }
+}
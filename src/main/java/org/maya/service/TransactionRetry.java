@@ -0,0 +1,103 @@
+package org.maya.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.jboss.logging.Logger;
+import org.maya.metrics.ShopMetrics;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Выполняет работу в отдельной транзакции и повторяет её при конфликтах
+ * (optimistic lock, deadlock, lock timeout, serialization failure).
+ */
+@ApplicationScoped
+public class TransactionRetry {
+
+    // 40001 - serialization failure / deadlock (H2), 40P01 - deadlock (PostgreSQL), HYT00 - lock timeout (H2)
+    private static final Set<String> TRANSIENT_SQL_STATES = Set.of("40001", "40P01", "HYT00");
+
+    @Inject
+    Logger logger;
+
+    @Inject
+    ShopMetrics shopMetrics;
+
+    @ConfigProperty(name = "magazine.tx.retry.max-attempts", defaultValue = "3")
+    int maxAttempts;
+
+    @ConfigProperty(name = "magazine.tx.retry.backoff-ms", defaultValue = "10")
+    long backoffMs;
+
+    public <T> T call(String operation, Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inNewTransaction(work);
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e instanceof RuntimeException re ? re : new IllegalStateException(e);
+                }
+                logger.debugf("Transient conflict during %s (attempt %d of %d): %s", operation, attempt, maxAttempts, e);
+                shopMetrics.transactionRetry(operation);
+                backoff(attempt);
+            }
+        }
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public <T> T inNewTransaction(Supplier<T> work) {
+        return work.get();
+    }
+
+    public static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException
+                    || t instanceof PessimisticLockException
+                    || t instanceof LockTimeoutException
+                    || t instanceof StaleStateException
+                    || t instanceof LockAcquisitionException
+                    || t instanceof org.hibernate.PessimisticLockException) {
+                return true;
+            }
+            // Set.of не принимает null в contains, а SQLState у драйверных ошибок бывает пустым
+            if (t instanceof SQLException sql && sql.getSQLState() != null && TRANSIENT_SQL_STATES.contains(sql.getSQLState())) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /** Нарушение ограничения БД (например, уникальности имени) - не повторяется, а отдается клиенту как конфликт. */
+    public static boolean isConstraintViolation(Throwable e) {
+        for (Throwable t = e; t != null && t.getCause() != t; t = t.getCause()) {
+            if (t instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff(int attempt) {
+        long maxDelay = backoffMs << (attempt - 1);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxDelay / 2, maxDelay + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", ie);
+        }
+    }
+}
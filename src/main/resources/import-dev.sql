@@ -0,0 +1,10 @@
+-- Демо-данные для dev и test (H2): NEXT VALUE FOR - синтаксис H2, на PostgreSQL скрипт не выполнится.
+-- Подключается явно через quarkus.hibernate-orm.sql-load-script только в профилях %dev и %test.
+-- Очищаем таблицы в правильном порядке
+DELETE FROM order_items;
+DELETE FROM orders;
+DELETE FROM items;
+
+INSERT INTO items (id, name, quantity, price, version) VALUES
+(NEXT VALUE FOR items_SEQ, 'Ноутбук', 10, 999.99, 0),
+(NEXT VALUE FOR items_SEQ, 'Телефон', 15, 499.50, 0);
\ No newline at end of file
@@ -0,0 +1,104 @@
+package org.maya;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
+import jakarta.inject.Inject;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.Test;
+import org.maya.model.Item;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Перегруженное оформление заказов получает быстрые 429/503, а чтение каталога продолжает отвечать.
+ */
+@QuarkusTest
+@TestProfile(AdmissionControlTest.SingleCheckoutProfile.class)
+public class AdmissionControlTest {
+
+    /** Одно место и одно место в очереди для записи заказов. */
+    public static class SingleCheckoutProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "magazine.admission.order-writes.limit", "1",
+                    "magazine.admission.order-writes.queue", "1",
+                    "magazine.admission.queue-timeout", "200ms");
+        }
+    }
+
+    @Inject
+    MeterRegistry registry;
+
+    @Test
+    public void saturatedCheckoutShedsLoadButReadsStayAvailable() throws Exception {
+        long item = given().contentType(ContentType.JSON)
+                .body("{\"name\":\"admission-" + UUID.randomUUID() + "\",\"quantity\":10,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        String order = "{\"address\":\"Sale street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":1}]}";
+
+        // Блокировка строки товара держит первое оформление заказа на месте
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch unlock = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> {
+            Item.findById(item, LockModeType.PESSIMISTIC_WRITE);
+            locked.countDown();
+            try {
+                unlock.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<ExtractableResponse<Response>> admitted = CompletableFuture.supplyAsync(() -> post(order));
+        awaitGauge("magazine.admission.in-flight", 1);
+        CompletableFuture<ExtractableResponse<Response>> queued = CompletableFuture.supplyAsync(() -> post(order));
+        awaitGauge("magazine.admission.queued", 1);
+
+        ExtractableResponse<Response> rejected = post(order);
+        assertEquals(429, rejected.statusCode());
+        assertEquals("1", rejected.header("Retry-After"));
+        given().when().get("/api/items/" + item).then().statusCode(200);
+        assertEquals(503, queued.get(10, TimeUnit.SECONDS).statusCode());
+
+        unlock.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        assertEquals(201, admitted.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(0.0, gauge("magazine.admission.in-flight"));
+    }
+
+    private void awaitGauge(String name, double expected) throws InterruptedException {
+        for (int i = 0; i < 500 && gauge(name) != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, gauge(name), name);
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("class", "order-writes").gauge().value();
+    }
+
+    private static ExtractableResponse<Response> post(String body) {
+        return given().contentType(ContentType.JSON).body(body)
+                .when().post("/api/orders")
+                .then().extract();
+    }
+}
@@ -0,0 +1,22 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.Map;
+
+/**
+ * Профиль для замеров производительности: без построчного логирования SQL, которое искажает результаты,
+ * и без допуска запросов - замеряется пропускная способность, а не отказы под нагрузкой.
+ */
+public class BenchmarkProfile implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of(
+                "quarkus.hibernate-orm.log.sql", "false",
+                "quarkus.log.category.\"org.hibernate.SQL\".level", "INFO",
+                "quarkus.log.category.\"org.hibernate.type.descriptor.sql\".level", "INFO",
+                "quarkus.log.category.\"org.maya\".level", "WARN",
+                "magazine.admission.enabled", "false");
+    }
+}
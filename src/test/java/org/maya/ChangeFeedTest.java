@@ -0,0 +1,87 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Лента изменений: после token приходят только новые изменения по порядку, устаревший token требует resync.
+ */
+@QuarkusTest
+public class ChangeFeedTest {
+
+    @Test
+    public void returnsChangesAfterToken() {
+        String token = given().when().get("/api/changes")
+                .then().statusCode(200)
+                .body("changes.size()", equalTo(0))
+                .extract().jsonPath().getString("token");
+
+        long item = given().contentType(ContentType.JSON)
+                .body("{\"name\":\"feed-" + UUID.randomUUID() + "\",\"quantity\":5,\"price\":2.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        long order = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Feed street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":2}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        given().when().delete("/api/orders/" + order).then().statusCode(204);
+
+        JsonPath feed = given().queryParam("since", token)
+                .when().get("/api/changes")
+                .then().statusCode(200)
+                .body("hasMore", equalTo(false))
+                .extract().jsonPath();
+        List<Map<String, Object>> changes = feed.getList("changes");
+        for (int i = 1; i < changes.size(); i++) {
+            assertEquals(((Number) changes.get(i - 1).get("seq")).longValue() + 1, ((Number) changes.get(i).get("seq")).longValue());
+        }
+        List<String> actions = changes.stream()
+                .filter(c -> ((Number) c.get("id")).longValue() == ("item".equals(c.get("type")) ? item : order))
+                .map(c -> c.get("type") + ":" + c.get("action"))
+                .toList();
+        // заказ и остатки меняются в одной транзакции, их взаимный порядок не фиксирован
+        assertEquals(5, actions.size(), actions.toString());
+        assertEquals("item:created", actions.get(0));
+        assertEquals(2, actions.stream().filter("item:stock_changed"::equals).count());
+        assertTrue(actions.indexOf("order:created") < actions.indexOf("order:deleted"));
+
+        String next = feed.getString("token");
+        given().queryParam("since", next)
+                .when().get("/api/changes")
+                .then().statusCode(200)
+                .body("changes.size()", equalTo(0))
+                .body("token", equalTo(next));
+
+        given().queryParam("since", token).queryParam("limit", 1)
+                .when().get("/api/changes")
+                .then().statusCode(200)
+                .body("changes.size()", equalTo(1))
+                .body("hasMore", equalTo(true));
+    }
+
+    @Test
+    public void unknownTokenRequiresResync() {
+        given().queryParam("since", "not-a-token")
+                .when().get("/api/changes")
+                .then().statusCode(400);
+
+        // token чужого запуска с seq, которого нет в таблице
+        given().queryParam("since", "zzzzzz-" + Long.MAX_VALUE)
+                .when().get("/api/changes")
+                .then().statusCode(410)
+                .body("resync", equalTo(true));
+    }
+}
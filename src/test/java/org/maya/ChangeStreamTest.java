@@ -0,0 +1,92 @@
+package org.maya;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Поток изменений: подписчик получает после коммита событие с актуальным состоянием товара и заказа.
+ */
+@QuarkusTest
+public class ChangeStreamTest {
+
+    @TestHTTPResource("/api/changes/stream")
+    URI streamUri;
+
+    @Test
+    public void streamsItemAndOrderChangesAfterCommit() throws Exception {
+        HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+                .send(HttpRequest.newBuilder(streamUri).header("Accept", "text/event-stream").build(),
+                        HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> events = lines.iterator();
+            assertEquals(":connected", CompletableFuture.supplyAsync(events::next).get(10, TimeUnit.SECONDS));
+
+            long item = given().contentType(ContentType.JSON)
+                    .body("{\"name\":\"stream-" + UUID.randomUUID() + "\",\"quantity\":5,\"price\":2.0}")
+                    .when().post("/api/items")
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id");
+            String itemEvent = nextData(events, "item");
+            assertTrue(itemEvent.contains("\"id\":" + item) && itemEvent.contains("\"quantity\":5"), itemEvent);
+
+            long order = given().contentType(ContentType.JSON)
+                    .body("{\"address\":\"Stream street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":2}]}")
+                    .when().post("/api/orders")
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id");
+            // заказ и списание остатка приходят одной пачкой, порядок событий в ней не задан
+            Map<String, String> orderEvents = nextData(events, Set.of("order", "item"));
+            String orderEvent = orderEvents.get("order");
+            assertTrue(orderEvent.contains("\"id\":" + order) && orderEvent.contains("Stream street 1"), orderEvent);
+            String stockEvent = orderEvents.get("item");
+            assertTrue(stockEvent.contains("\"id\":" + item) && stockEvent.contains("\"quantity\":3"), stockEvent);
+        }
+    }
+
+    /** data следующего события с именем name (события и строки между ними пропускаются). */
+    private static String nextData(Iterator<String> events, String name) throws Exception {
+        return nextData(events, Set.of(name)).get(name);
+    }
+
+    /** data первых событий с каждым из имен names в любом порядке; остальные события пропускаются. */
+    private static Map<String, String> nextData(Iterator<String> events, Set<String> names) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> data = new HashMap<>();
+            String name = null;
+            while (events.hasNext()) {
+                String line = events.next();
+                if (line.startsWith("event:")) {
+                    name = line.substring("event:".length()).trim();
+                } else if (name != null && line.startsWith("data:") && names.contains(name)) {
+                    data.putIfAbsent(name, line.substring("data:".length()).trim());
+                    if (data.size() == names.size()) {
+                        return data;
+                    }
+                } else if (line.isEmpty()) {
+                    name = null;
+                }
+            }
+            throw new IllegalStateException("Stream ended before events " + names + ", got " + data.keySet());
+        }).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,75 @@
+package org.maya;
+
+import io.restassured.path.json.JsonPath;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Общие данные и проверки для нагрузочных тестов оформления заказов: случайный заказ по засеянным
+ * товарам, текущие остатки и количества в заказах - для проверки сохранения склада
+ * (остаток + заказано = начальный остаток).
+ */
+public final class CheckoutFixtures {
+
+    private CheckoutFixtures() {
+    }
+
+    /** Заказ из 1-3 случайных позиций по 1-20 штук; товары могут повторяться. */
+    public static String randomOrder(List<Long> itemIds, String address) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int lines = 1 + random.nextInt(3);
+        String items = random.ints(lines, 0, itemIds.size())
+                .mapToObj(i -> "{\"itemId\":" + itemIds.get(i) + ",\"quantity\":" + (1 + random.nextInt(20)) + "}")
+                .collect(Collectors.joining(","));
+        return "{\"address\":\"" + address + "\",\"items\":[" + items + "]}";
+    }
+
+    /** Остатки товаров из itemIds: один проход курсором от наименьшего id до наибольшего. */
+    public static Map<Long, Integer> currentStock(List<Long> itemIds) {
+        Map<Long, Integer> stock = new HashMap<>();
+        long after = itemIds.stream().mapToLong(Long::longValue).min().orElseThrow() - 1;
+        long last = itemIds.stream().mapToLong(Long::longValue).max().orElseThrow();
+        while (after < last) {
+            JsonPath page = given().queryParam("after", after).queryParam("limit", 500)
+                    .when().get("/api/items")
+                    .then().statusCode(200)
+                    .extract().jsonPath();
+            List<Map<String, Object>> rows = page.getList("items");
+            for (Map<String, Object> row : rows) {
+                long itemId = ((Number) row.get("id")).longValue();
+                if (itemIds.contains(itemId)) {
+                    stock.put(itemId, ((Number) row.get("quantity")).intValue());
+                }
+            }
+            Object next = page.get("nextCursor");
+            if (next == null) {
+                break;
+            }
+            after = ((Number) next).longValue();
+        }
+        assertEquals(itemIds.size(), stock.size(), "Items missing from catalog: " + itemIds);
+        return stock;
+    }
+
+    /** Сколько штук каждого товара из itemIds лежит во всех заказах; позиции удаленных товаров пропускаются. */
+    public static Map<Long, Integer> orderedQuantities(List<Long> itemIds) {
+        List<Map<String, Object>> lines = given().when().get("/api/orders")
+                .then().statusCode(200)
+                .extract().jsonPath().getList("items.flatten()");
+        Map<Long, Integer> ordered = new HashMap<>();
+        for (Map<String, Object> line : lines) {
+            Object itemId = line.get("itemId");
+            if (itemId != null && itemIds.contains(((Number) itemId).longValue())) {
+                ordered.merge(((Number) itemId).longValue(), ((Number) line.get("quantity")).intValue(), Integer::sum);
+            }
+        }
+        return ordered;
+    }
+}
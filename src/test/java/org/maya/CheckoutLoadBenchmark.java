@@ -0,0 +1,141 @@
+package org.maya;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузка "оформление заказа" при высокой конкурентности: чтение товаров и заказов вперемешку с созданием заказов.
+ * Сравнение режимов - подклассы с профилями WorkerPool/VirtualThreads.
+ */
+abstract class CheckoutLoadBenchmark {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    private static final int ITEMS = 20;
+    private static final int CLIENTS = 400;
+    private static final int WARMUP_OPERATIONS = 5;
+    private static final int OPERATIONS_PER_CLIENT = 25;
+
+    @TestHTTPResource("/")
+    URI base;
+
+    private HttpClient client;
+
+    @Test
+    public void checkoutUnderLoad() throws Exception {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<Long> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(post("/api/items", "{\"name\":\"load-" + UUID.randomUUID() + "\",\"quantity\":10000000,\"price\":5.0}"));
+        }
+        List<Long> orders = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            orders.add(post("/api/orders", orderBody(items)));
+        }
+
+        run(items, orders, WARMUP_OPERATIONS);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        long[] latencies = run(items, orders, OPERATIONS_PER_CLIENT, failures);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: %d clients, %d requests, %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, failures %d%n",
+                getClass().getSimpleName(), CLIENTS, latencies.length, latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6,
+                failures.get());
+        System.out.println("Pinning: " + get("/api/diagnostics/pinning").body());
+        assertEquals(0, failures.get());
+    }
+
+    private long[] run(List<Long> items, List<Long> orders, int operations) throws Exception {
+        return run(items, orders, operations, new AtomicInteger());
+    }
+
+    private long[] run(List<Long> items, List<Long> orders, int operations, AtomicInteger failures) throws Exception {
+        long[] latencies = new long[CLIENTS * operations];
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> results = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int offset = c * operations;
+                results.add(clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < operations; i++) {
+                        long begin = System.nanoTime();
+                        int roll = random.nextInt(100);
+                        HttpResponse<String> response;
+                        if (roll < 50) {
+                            response = get("/api/items/" + items.get(random.nextInt(items.size())));
+                        } else if (roll < 70) {
+                            response = get("/api/orders/" + orders.get(random.nextInt(orders.size())));
+                        } else {
+                            response = send(HttpRequest.newBuilder(base.resolve("/api/orders"))
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(orderBody(items))).build());
+                        }
+                        latencies[offset + i] = System.nanoTime() - begin;
+                        if (response.statusCode() >= 300) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        return latencies;
+    }
+
+    private static String orderBody(List<Long> items) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long first = items.get(random.nextInt(items.size()));
+        long second = items.get(random.nextInt(items.size()));
+        return "{\"address\":\"Load street 1\",\"items\":[{\"itemId\":" + first + ",\"quantity\":1},"
+                + "{\"itemId\":" + second + ",\"quantity\":2}]}";
+    }
+
+    private long post(String path, String body) throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+        assertEquals(201, response.statusCode(), response.body());
+        Matcher matcher = ID.matcher(response.body());
+        matcher.find();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return send(HttpRequest.newBuilder(base.resolve(path)).build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+}
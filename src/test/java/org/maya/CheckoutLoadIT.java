@@ -0,0 +1,217 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.maya.CheckoutFixtures.currentStock;
+import static org.maya.CheckoutFixtures.orderedQuantities;
+import static org.maya.CheckoutFixtures.randomOrder;
+
+/**
+ * Нагрузочный прогон оформления заказов против собранного приложения (H2 в памяти, без сети).
+ * Запуск: mvn verify -Pit [-Dload.clients=64 -Dload.operations=5000 -Dload.mix=post:30,put:50,delete:20
+ * -Dload.items=20 -Dload.stock=1000]
+ * Проверяет, что остаток товара не уходит в минус (в том числе во время нагрузки)
+ * и что остаток плюс заказанное количество не меняется.
+ */
+@QuarkusIntegrationTest
+public class CheckoutLoadIT {
+
+    private static final Set<Integer> EXPECTED_STATUSES = Set.of(200, 201, 204, 400, 404, 409, 429, 503); // 429/503 - отказ допуска под нагрузкой
+    private static final long WATCH_INTERVAL_MS = 100;
+
+    private final int items = Integer.getInteger("load.items", 20);
+    private final int initialStock = Integer.getInteger("load.stock", 1000);
+    private final int clients = Integer.getInteger("load.clients", 32);
+    private final int operations = Integer.getInteger("load.operations", 2000);
+    private final Map<String, Integer> mix = parseMix(System.getProperty("load.mix", "post:30,put:50,delete:20"));
+
+    private final Map<String, Queue<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, Integer>> statuses = new ConcurrentHashMap<>();
+
+    @Test
+    public void checkoutUnderConcurrentLoadKeepsStockInvariants() throws Exception {
+        List<Long> itemIds = seedItems();
+        List<Long> orderIds = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < items; i++) {
+            orderIds.add(given().contentType(ContentType.JSON).body(randomOrder(itemIds, "Load street"))
+                    .when().post("/api/orders")
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id"));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Queue<String> negativeStock = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(clients + 1);
+        long elapsedNanos;
+        try {
+            // Остатки проверяются и во время нагрузки, а не только в конце
+            Future<?> watcher = executor.submit(() -> {
+                while (running.get()) {
+                    currentStock(itemIds).forEach((itemId, quantity) -> {
+                        if (quantity < 0) {
+                            negativeStock.add(itemId + "=" + quantity);
+                        }
+                    });
+                    Thread.sleep(WATCH_INTERVAL_MS);
+                }
+                return null;
+            });
+
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int share = operations / clients + (c < operations % clients ? 1 : 0);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < share; i++) {
+                        runOperation(pickOperation(), itemIds, orderIds);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            elapsedNanos = System.nanoTime() - start;
+            running.set(false);
+            watcher.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report(elapsedNanos);
+
+        statuses.forEach((operation, counts) -> assertTrue(EXPECTED_STATUSES.containsAll(counts.keySet()),
+                "Unexpected statuses for " + operation + ": " + counts));
+        assertTrue(negativeStock.isEmpty(), "Negative stock observed during load: " + negativeStock);
+
+        Map<Long, Integer> stock = currentStock(itemIds);
+        Map<Long, Integer> ordered = orderedQuantities(itemIds);
+        for (Long itemId : itemIds) {
+            assertTrue(stock.get(itemId) >= 0, "Negative stock for item " + itemId);
+            assertEquals(initialStock, stock.get(itemId) + ordered.getOrDefault(itemId, 0),
+                    "Stock plus ordered quantity must be conserved for item " + itemId);
+        }
+    }
+
+    private void runOperation(String operation, List<Long> itemIds, List<Long> orderIds) {
+        Long[] current = orderIds.toArray(new Long[0]);
+        if (current.length == 0 && !operation.equals("post")) {
+            operation = "post"; // все заказы удалены - изменять нечего
+        }
+        long orderId = current.length == 0 ? -1 : current[ThreadLocalRandom.current().nextInt(current.length)];
+
+        long begin = System.nanoTime();
+        Response response = switch (operation) {
+            case "post" -> given().contentType(ContentType.JSON).body(randomOrder(itemIds, "Load street")).when().post("/api/orders");
+            case "put" -> given().contentType(ContentType.JSON).body(randomOrder(itemIds, "Load street")).when().put("/api/orders/" + orderId);
+            case "delete" -> given().when().delete("/api/orders/" + orderId);
+            default -> throw new IllegalArgumentException("Unknown operation: " + operation);
+        };
+        long latency = System.nanoTime() - begin;
+
+        int status = response.statusCode();
+        if (operation.equals("post") && status == 201) {
+            orderIds.add(response.jsonPath().getLong("id"));
+        } else if (operation.equals("delete") && status == 204) {
+            orderIds.remove(orderId);
+        }
+        latencies.computeIfAbsent(operation, key -> new ConcurrentLinkedQueue<>()).add(latency);
+        statuses.computeIfAbsent(operation, key -> new ConcurrentHashMap<>()).merge(status, 1, Integer::sum);
+    }
+
+    private String pickOperation() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty load mix");
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Checkout load: %d clients, %d operations in %.1f s (%.0f ops/s), mix %s%n",
+                clients, operations, seconds, operations / seconds, mix);
+        System.out.printf("%-14s %7s %9s %9s %9s %9s %9s  %s%n",
+                "endpoint", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "statuses");
+        for (String operation : mix.keySet()) {
+            long[] sorted = latencies.getOrDefault(operation, new ConcurrentLinkedQueue<>()).stream()
+                    .mapToLong(Long::longValue).sorted().toArray();
+            if (sorted.length == 0) {
+                continue;
+            }
+            System.out.printf("%-14s %7d %9.0f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                    endpoint(operation), sorted.length, sorted.length / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6, new TreeMap<>(statuses.get(operation)));
+        }
+    }
+
+    private static String endpoint(String operation) {
+        return switch (operation) {
+            case "post" -> "POST /orders";
+            case "put" -> "PUT /orders/id";
+            default -> "DELETE /orders";
+        };
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] entry = part.trim().split(":");
+            String operation = entry[0].trim().toLowerCase();
+            if (!Set.of("post", "put", "delete").contains(operation)) {
+                throw new IllegalArgumentException("Unknown operation in load.mix: " + operation);
+            }
+            result.put(operation, Integer.parseInt(entry[1].trim()));
+        }
+        return result;
+    }
+
+    private List<Long> seedItems() {
+        String prefix = "load-" + UUID.randomUUID() + "-";
+        String body = IntStream.range(0, items)
+                .mapToObj(i -> "{\"name\":\"" + prefix + i + "\",\"quantity\":" + initialStock + ",\"price\":1.0}")
+                .collect(Collectors.joining("\n"));
+        JsonPath result = given().contentType("application/x-ndjson").body(body.getBytes(StandardCharsets.UTF_8))
+                .when().post("/api/items/bulk")
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(items, result.getInt("created"));
+        return result.getList("rows.id", Long.class);
+    }
+}
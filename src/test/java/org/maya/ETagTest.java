@@ -0,0 +1,99 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Условные GET: неизменившийся ресурс отдает 304, а любое закоммиченное изменение товара, остатка
+ * или заказа меняет ETag.
+ */
+@QuarkusTest
+public class ETagTest {
+
+    @Test
+    public void itemTagChangesOnWriteAndStockChange() {
+        long item = createItem(10);
+        String tag = etag("/api/items/" + item);
+        notModified("/api/items/" + item, tag);
+        notModified("/api/items", etag("/api/items"));
+
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"etag-" + UUID.randomUUID() + "\",\"quantity\":9,\"price\":1.0}")
+                .when().put("/api/items/" + item)
+                .then().statusCode(200);
+        String updated = modified("/api/items/" + item, tag);
+
+        given().contentType(ContentType.JSON)
+                .body("{\"address\":\"ETag street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":1}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201);
+        modified("/api/items/" + item, updated);
+    }
+
+    @Test
+    public void orderTagChangesWhenOnlyLinesChange() {
+        long first = createItem(10);
+        long second = createItem(10);
+        long order = given().contentType(ContentType.JSON)
+                .body(order(first, 1, second, 2))
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        String tag = etag("/api/orders/" + order);
+        notModified("/api/orders/" + order, tag);
+        String listTag = etag("/api/orders");
+
+        // Сумма, число позиций и адрес те же: версию увеличивает PESSIMISTIC_FORCE_INCREMENT
+        given().contentType(ContentType.JSON).body(order(first, 2, second, 1))
+                .when().put("/api/orders/" + order)
+                .then().statusCode(200);
+        String swapped = modified("/api/orders/" + order, tag);
+        modified("/api/orders", listTag);
+
+        given().contentType(ContentType.JSON).body("{\"address\":\"ETag street 2\"}")
+                .when().patch("/api/orders/" + order)
+                .then().statusCode(200);
+        modified("/api/orders/" + order, swapped);
+    }
+
+    private static String order(long first, int firstQuantity, long second, int secondQuantity) {
+        return "{\"address\":\"ETag street 1\",\"items\":[{\"itemId\":" + first + ",\"quantity\":" + firstQuantity + "},"
+                + "{\"itemId\":" + second + ",\"quantity\":" + secondQuantity + "}]}";
+    }
+
+    private static String etag(String path) {
+        String tag = given().when().get(path).then().statusCode(200).extract().header("ETag");
+        assertNotNull(tag, path);
+        return tag;
+    }
+
+    private static void notModified(String path, String tag) {
+        given().header("If-None-Match", tag).when().get(path).then().statusCode(304);
+    }
+
+    /** Ресурс с прежним тегом отдается заново (200) с новым тегом; возвращает новый тег. */
+    private static String modified(String path, String oldTag) {
+        String tag = given().header("If-None-Match", oldTag).when().get(path)
+                .then().statusCode(200)
+                .extract().header("ETag");
+        assertNotNull(tag, path);
+        assertNotEquals(oldTag, tag, path);
+        notModified(path, tag);
+        return tag;
+    }
+
+    private static long createItem(int quantity) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"etag-" + UUID.randomUUID() + "\",\"quantity\":" + quantity + ",\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
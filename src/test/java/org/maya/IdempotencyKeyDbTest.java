@@ -0,0 +1,151 @@
+package org.maya;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.Test;
+import org.maya.model.IdempotencyRecord;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Idempotency-Key с таблицей idempotency_keys: ответ коммитится вместе с заказом, а запрос с ключом,
+ * который выполняет или уже выполнил другой экземпляр (строка в таблице, которой нет в памяти), не выполняется заново.
+ */
+@QuarkusTest
+@TestProfile(IdempotencyKeyDbTest.DbProfile.class)
+public class IdempotencyKeyDbTest {
+
+    public static class DbProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("magazine.idempotency.db.enabled", "true");
+        }
+    }
+
+    @Test
+    public void responseIsCommittedWithOrder() {
+        long item = createItem();
+        String key = UUID.randomUUID().toString();
+
+        long order = post(key, order(item, 2)).then().statusCode(201).extract().jsonPath().getLong("id");
+        IdempotencyRecord record = record(key);
+        assertNotNull(record);
+        assertEquals(201, record.status);
+        assertTrue(record.body.contains("\"id\":" + order), record.body);
+
+        // нехватка товара откатывает транзакцию заказа - вместе со строкой ключа
+        String failed = UUID.randomUUID().toString();
+        post(failed, order(item, 100)).then().statusCode(400);
+        assertNull(record(failed));
+        assertEquals(8, stock(item));
+    }
+
+    @Test
+    public void responseCommittedByAnotherInstanceIsReplayed() {
+        long item = createItem();
+        String key = UUID.randomUUID().toString();
+        long order = post(key, order(item, 2)).then().statusCode(201).extract().jsonPath().getLong("id");
+
+        // ключа нет в памяти этого экземпляра, но ответ есть в таблице
+        String other = UUID.randomUUID().toString();
+        QuarkusTransaction.requiringNew().run(() -> copy(record(key), other).persist());
+        ExtractableResponse<Response> replayed = post(other, order(item, 2)).then().extract();
+        assertEquals(201, replayed.statusCode());
+        assertEquals("true", replayed.header("Idempotent-Replayed"));
+        assertEquals(order, replayed.jsonPath().getLong("id"));
+        assertEquals(422, post(other, order(item, 3)).then().extract().statusCode());
+        assertEquals(8, stock(item));
+    }
+
+    @Test
+    public void requestInProgressElsewhereIsNotExecutedAgain() throws Exception {
+        long item = createItem();
+        String key = UUID.randomUUID().toString();
+        long order = post(key, order(item, 2)).then().statusCode(201).extract().jsonPath().getLong("id");
+        IdempotencyRecord committed = record(key);
+
+        // Другой экземпляр вставил строку ключа и еще не закоммитил заказ
+        String other = UUID.randomUUID().toString();
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> {
+            copy(committed, other).persist();
+            IdempotencyRecord.flush();
+            inserted.countDown();
+            try {
+                commit.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(inserted.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<ExtractableResponse<Response>> repeated = CompletableFuture.supplyAsync(
+                () -> post(other, order(item, 2)).then().extract());
+        Thread.sleep(300);
+        assertFalse(repeated.isDone(), "request waits for the transaction holding the key");
+        commit.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+
+        ExtractableResponse<Response> response = repeated.get(10, TimeUnit.SECONDS);
+        assertEquals(201, response.statusCode());
+        assertEquals(order, response.jsonPath().getLong("id"));
+        assertEquals(8, stock(item));
+    }
+
+    private static IdempotencyRecord copy(IdempotencyRecord source, String key) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.key = key;
+        record.fingerprint = source.fingerprint;
+        record.status = source.status;
+        record.body = source.body;
+        record.location = source.location;
+        record.createdAt = Instant.now();
+        return record;
+    }
+
+    private static IdempotencyRecord record(String key) {
+        return QuarkusTransaction.requiringNew().call(() -> IdempotencyRecord.<IdempotencyRecord>findById(key));
+    }
+
+    private static Response post(String key, String body) {
+        return given().contentType(ContentType.JSON).header("Idempotency-Key", key).body(body)
+                .when().post("/api/orders");
+    }
+
+    private static String order(long item, int quantity) {
+        return "{\"address\":\"Retry street 2\",\"items\":[{\"itemId\":" + item + ",\"quantity\":" + quantity + "}]}";
+    }
+
+    private static int stock(long item) {
+        return given().when().get("/api/items/" + item)
+                .then().statusCode(200)
+                .extract().jsonPath().getInt("quantity");
+    }
+
+    private static long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"idem-db-" + UUID.randomUUID() + "\",\"quantity\":10,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
@@ -0,0 +1,95 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Повтор POST /api/orders с тем же Idempotency-Key возвращает исходный заказ и не списывает склад второй раз.
+ */
+@QuarkusTest
+public class IdempotencyKeyTest {
+
+    @Test
+    public void repeatedKeyReturnsOriginalOrder() {
+        long item = createItem();
+        String key = UUID.randomUUID().toString();
+
+        ExtractableResponse<Response> first = post(key, order(item, 2));
+        assertEquals(201, first.statusCode());
+        assertNull(first.header("Idempotent-Replayed"));
+        ExtractableResponse<Response> repeated = post(key, order(item, 2));
+        assertEquals(201, repeated.statusCode());
+        assertEquals("true", repeated.header("Idempotent-Replayed"));
+        assertEquals(first.jsonPath().getLong("id"), repeated.jsonPath().getLong("id"));
+        assertEquals(8, stock(item));
+
+        assertEquals(422, post(key, order(item, 3)).statusCode());
+        assertEquals(8, stock(item));
+    }
+
+    @Test
+    public void concurrentRequestsWithSameKeyCollapse() throws Exception {
+        long item = createItem();
+        String key = UUID.randomUUID().toString();
+        Callable<Long> request = () -> post(key, order(item, 1)).jsonPath().getLong("id");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> results = executor.invokeAll(IntStream.range(0, 8).mapToObj(i -> request).toList());
+            Set<Long> ids = results.stream().map(IdempotencyKeyTest::get).collect(Collectors.toSet());
+            assertEquals(1, ids.size(), "all requests get the same order");
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(9, stock(item));
+    }
+
+    private static ExtractableResponse<Response> post(String key, String body) {
+        return given().contentType(ContentType.JSON).header("Idempotency-Key", key).body(body)
+                .when().post("/api/orders")
+                .then().extract();
+    }
+
+    private static String order(long item, int quantity) {
+        return "{\"address\":\"Retry street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":" + quantity + "}]}";
+    }
+
+    private static Long get(Future<Long> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int stock(long item) {
+        return given().when().get("/api/items/" + item)
+                .then().statusCode(200)
+                .extract().jsonPath().getInt("quantity");
+    }
+
+    private static long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"idem-" + UUID.randomUUID() + "\",\"quantity\":10,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
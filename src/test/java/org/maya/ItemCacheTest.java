@@ -0,0 +1,133 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import io.restassured.response.Response;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.maya.dto.ItemResponseDTO;
+import org.maya.event.ItemsChangedEvent;
+import org.maya.service.ItemCache;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Кэш каталога: закоммиченные изменения товара и его остатка видны сразу и в товаре, и в странице каталога,
+ * а отмененное изменение кэш не трогает.
+ */
+@QuarkusTest
+public class ItemCacheTest {
+
+    @Inject
+    ItemCache itemCache;
+
+    @Inject
+    Event<ItemsChangedEvent> itemsChanged;
+
+    @Test
+    public void committedChangesInvalidateItemAndPage() {
+        String name = "cache-" + UUID.randomUUID();
+        long id = given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":10,\"price\":2.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        assertState(id, name, 10, 2.0);
+        assertEquals(0, SqlBudget.statements(given().when().get("/api/items/" + id)), "item is cached");
+        assertEquals(0, SqlBudget.statements(page(id)), "page is cached");
+
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "-new\",\"quantity\":7,\"price\":3.0}")
+                .when().put("/api/items/" + id)
+                .then().statusCode(200);
+        assertState(id, name + "-new", 7, 3.0);
+
+        given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Cache street 1\",\"items\":[{\"itemId\":" + id + ",\"quantity\":2}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201);
+        assertState(id, name + "-new", 5, 3.0);
+
+        // Отмененное изменение: кэш остается прежним и прогретым
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "-rolled-back\",\"quantity\":1,\"price\":-1.0}")
+                .when().put("/api/items/" + id)
+                .then().statusCode(400);
+        assertEquals(0, SqlBudget.statements(given().when().get("/api/items/" + id)), "item stays cached after rollback");
+        assertState(id, name + "-new", 5, 3.0);
+    }
+
+    @Test
+    public void valueLoadedBeforeInvalidationIsNotCached() {
+        long id = Long.MAX_VALUE - 1;
+        ItemResponseDTO stale = itemCache.item(id, () -> {
+            // изменение закоммичено, пока значение читалось из БД
+            itemsChanged.fire(ItemsChangedEvent.of(ItemsChangedEvent.Kind.UPDATED, id));
+            return dto(id, "stale");
+        });
+        assertEquals("stale", stale.name);
+        assertEquals("fresh", itemCache.item(id, () -> dto(id, "fresh")).name);
+        assertEquals("fresh", itemCache.item(id, () -> dto(id, "not loaded")).name);
+    }
+
+    @Test
+    public void invalidationRacingWithPutWins() throws Exception {
+        long id = Long.MAX_VALUE - 2;
+        ExecutorService invalidator = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                itemsChanged.fire(ItemsChangedEvent.of(ItemsChangedEvent.Kind.UPDATED, id));
+                CountDownLatch loaded = new CountDownLatch(1);
+                Future<?> invalidation = invalidator.submit(() -> {
+                    loaded.await();
+                    itemsChanged.fire(ItemsChangedEvent.of(ItemsChangedEvent.Kind.UPDATED, id));
+                    return null;
+                });
+                // значение прочитано до инвалидации, которая идет параллельно с проверкой поколения и put
+                itemCache.item(id, () -> {
+                    loaded.countDown();
+                    return dto(id, "stale");
+                });
+                invalidation.get(10, TimeUnit.SECONDS);
+                assertEquals("fresh", itemCache.item(id, () -> dto(id, "fresh")).name, "iteration " + i);
+            }
+        } finally {
+            invalidator.shutdown();
+        }
+    }
+
+    private static void assertState(long id, String name, int quantity, double price) {
+        JsonPath item = given().when().get("/api/items/" + id)
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(name, item.getString("name"));
+        assertEquals(quantity, item.getInt("quantity"));
+        assertEquals(price, item.getDouble("price"), 1e-9);
+
+        JsonPath page = page(id).then().statusCode(200).extract().jsonPath();
+        assertEquals(id, page.getLong("items[0].id"));
+        assertEquals(name, page.getString("items[0].name"));
+        assertEquals(quantity, page.getInt("items[0].quantity"));
+    }
+
+    private static Response page(long id) {
+        return given().queryParam("after", id - 1).queryParam("limit", 5).when().get("/api/items");
+    }
+
+    private static ItemResponseDTO dto(long id, String name) {
+        ItemResponseDTO dto = new ItemResponseDTO();
+        dto.id = id;
+        dto.name = name;
+        return dto;
+    }
+}
@@ -0,0 +1,64 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Поиск по индексу названий: ранжирование, обновление после изменений и проверка уникальности без SQL.
+ */
+@QuarkusTest
+public class ItemSearchTest {
+
+    @Test
+    public void searchRanksMatchesAndFollowsCatalogChanges() {
+        String tag = UUID.randomUUID().toString().substring(0, 8);
+        long inside = createItem("Чехол" + tag + "ный");
+        long wordStart = createItem("Старый " + tag.toUpperCase() + " кабель");
+        long prefix = createItem(tag + " зарядка");
+
+        assertEquals(List.of(prefix, wordStart, inside), search(tag));
+
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"renamed-" + UUID.randomUUID() + "\",\"quantity\":1,\"price\":1.0}")
+                .when().put("/api/items/" + prefix)
+                .then().statusCode(200);
+        given().when().delete("/api/items/" + inside).then().statusCode(204);
+
+        assertEquals(List.of(wordStart), search(tag));
+    }
+
+    @Test
+    public void duplicateNameIsRejectedWithoutQuery() {
+        String name = "unique-" + UUID.randomUUID();
+        createItem(name);
+
+        int statements = SqlBudget.statements(given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":1,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(409)
+                .extract().response());
+        assertEquals(0, statements);
+    }
+
+    private static List<Long> search(String query) {
+        return given().queryParam("q", query)
+                .when().get("/api/items/search")
+                .then().statusCode(200)
+                .extract().jsonPath().getList("id", Long.class);
+    }
+
+    private static long createItem(String name) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":1,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
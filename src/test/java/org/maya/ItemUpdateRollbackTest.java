@@ -0,0 +1,44 @@
+package org.maya;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+import org.maya.model.Item;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Отказ 400 после уже примененного изменения имени откатывает транзакцию целиком.
+ */
+@QuarkusTest
+public class ItemUpdateRollbackTest {
+
+    @Test
+    public void invalidPriceRollsBackRenamedItem() {
+        String name = "rollback-" + UUID.randomUUID();
+        long id = given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":3,\"price\":2.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+
+        String renamed = name + "-renamed";
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + renamed + "\",\"quantity\":3,\"price\":-1.0}")
+                .when().put("/api/items/" + id)
+                .then().statusCode(400);
+
+        Item stored = QuarkusTransaction.requiringNew().call(() -> Item.findById(id));
+        assertEquals(name, stored.name);
+        assertEquals(0L, stored.version);
+        // Имя не занято: отмененное переименование не попало ни в БД, ни в индекс имен
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + renamed + "\",\"quantity\":1,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201);
+    }
+}
@@ -0,0 +1,79 @@
+package org.maya;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.http.ContentType;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.maya.model.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Замер создания заказа на 1000 строк. Запуск: mvn test -Dbenchmark=true -Dtest=LargeOrderBenchmarkTest
+ */
+@QuarkusTest
+@TestProfile(BenchmarkProfile.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class LargeOrderBenchmarkTest {
+
+    private static final int LINES = 1_000;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Test
+    public void createThousandLineOrder() {
+        List<Long> itemIds = QuarkusTransaction.requiringNew().call(() -> {
+            List<Long> ids = new ArrayList<>();
+            String prefix = "bench-" + UUID.randomUUID() + "-";
+            for (int i = 0; i < LINES; i++) {
+                Item item = new Item();
+                item.name = prefix + i;
+                item.quantity = 1_000_000;
+                item.price = 1.0;
+                item.persist();
+                ids.add(item.id);
+            }
+            return ids;
+        });
+        String body = itemIds.stream()
+                .map(id -> "{\"itemId\":" + id + ",\"quantity\":1}")
+                .collect(Collectors.joining(",", "{\"address\":\"Wholesale\",\"items\":[", "]}"));
+
+        for (int i = 0; i < WARMUP; i++) {
+            createOrder(body);
+        }
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            createOrder(body);
+        }
+        double avgMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+        System.out.printf("%d-line order: %.1f ms/order, %d prepared statements/order, %d entity inserts/order%n",
+                LINES, avgMillis,
+                statistics.getPrepareStatementCount() / ITERATIONS,
+                statistics.getEntityInsertCount() / ITERATIONS);
+    }
+
+    private static void createOrder(String body) {
+        given().contentType(ContentType.JSON).body(body)
+                .when().post("/api/orders")
+                .then().statusCode(201);
+    }
+}
@@ -0,0 +1,88 @@
+package org.maya;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замер пропускной способности страницы UI. Запуск: mvn test -Dbenchmark=true -Dtest=MagazinePageBenchmarkTest
+ */
+@QuarkusTest
+@TestProfile(BenchmarkProfile.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class MagazinePageBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int WARMUP = 2_000;
+    private static final int REQUESTS = 20_000;
+
+    @TestHTTPResource("/")
+    URI page;
+
+    @Test
+    public void servePage() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String etag = client.send(HttpRequest.newBuilder(page).header("Accept-Encoding", "gzip").build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .headers().firstValue("ETag").orElse(null);
+
+        run(client, "identity", HttpRequest.newBuilder(page).header("Accept-Encoding", "identity").build());
+        run(client, "gzip", HttpRequest.newBuilder(page).header("Accept-Encoding", "gzip").build());
+        if (etag != null) {
+            run(client, "If-None-Match", HttpRequest.newBuilder(page)
+                    .header("Accept-Encoding", "gzip").header("If-None-Match", etag).build());
+        }
+    }
+
+    private static void run(HttpClient client, String label, HttpRequest request) throws Exception {
+        send(client, request, WARMUP);
+        AtomicLong bytes = new AtomicLong();
+        long start = System.nanoTime();
+        long status = send(client, request, REQUESTS, bytes);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("GET / [%s]: %.0f req/s, %d bytes/response, status %d%n",
+                label, REQUESTS / seconds, bytes.get() / REQUESTS, status);
+    }
+
+    private static long send(HttpClient client, HttpRequest request, int count) throws Exception {
+        return send(client, request, count, new AtomicLong());
+    }
+
+    private static long send(HttpClient client, HttpRequest request, int count, AtomicLong bytes) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    int status = 0;
+                    for (int i = 0; i < count / THREADS; i++) {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        bytes.addAndGet(response.body().length);
+                        status = response.statusCode();
+                    }
+                    return status;
+                }));
+            }
+            int status = 0;
+            for (Future<Integer> result : results) {
+                status = result.get();
+            }
+            return status;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -2,16 +2,27 @@ package org.maya;
 
 import io.quarkus.test.common.http.TestHTTPResource;
 import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.config.DecoderConfig;
+import io.restassured.config.RestAssuredConfig;
 import org.junit.jupiter.api.Test;
 
 import java.net.URL;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @QuarkusTest
 public class MagazineTest {
 
+    /** Без декодеров RestAssured не добавляет свой Accept-Encoding и не распаковывает ответ. */
+    private static final RestAssuredConfig RAW = RestAssuredConfig.config()
+            .decoderConfig(DecoderConfig.decoderConfig().noContentDecoders());
+
     @TestHTTPResource
     URL baseUrl;
 
@@ -23,4 +34,46 @@ public class MagazineTest {
                 .statusCode(200)
                 .body(containsString("Магазин"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void pageIsCompressedAndRevalidatedPerEncoding() {
+        String gzipTag = given().config(RAW).header("Accept-Encoding", "gzip")
+                .when().get(baseUrl)
+                .then().statusCode(200)
+                .header("Content-Encoding", equalTo("gzip"))
+                .header("Vary", equalTo("Accept-Encoding"))
+                .extract().header("ETag");
+        String plainTag = given().config(RAW).header("Accept-Encoding", "identity")
+                .when().get(baseUrl)
+                .then().statusCode(200)
+                .header("Content-Encoding", nullValue())
+                .header("Vary", equalTo("Accept-Encoding"))
+                .body(containsString("Магазин"))
+                .extract().header("ETag");
+        assertNotEquals(gzipTag, plainTag, "gzip and identity representations have different tags");
+
+        given().config(RAW).header("Accept-Encoding", "gzip").header("If-None-Match", gzipTag)
+                .when().get(baseUrl)
+                .then().statusCode(304)
+                .header("ETag", equalTo(gzipTag));
+        given().config(RAW).header("Accept-Encoding", "identity").header("If-None-Match", gzipTag)
+                .when().get(baseUrl)
+                .then().statusCode(200);
+    }
+
+    @Test
+    public void acceptEncodingNegotiation() {
+        assertTrue(Magazine.acceptsGzip("gzip"));
+        assertTrue(Magazine.acceptsGzip("deflate, x-gzip;q=0.5"));
+        assertTrue(Magazine.acceptsGzip("*"));
+        assertTrue(Magazine.acceptsGzip("gzip, identity;q=0"));
+        assertFalse(Magazine.acceptsGzip(null));
+        assertFalse(Magazine.acceptsGzip("identity"));
+        assertFalse(Magazine.acceptsGzip("gzip;q=0"));
+        assertFalse(Magazine.acceptsGzip("*;q=0"));
+        // явный отказ от gzip сильнее *
+        assertFalse(Magazine.acceptsGzip("gzip;q=0, *"));
+        assertFalse(Magazine.acceptsGzip("*, gzip;q=0"));
+        assertTrue(Magazine.acceptsGzip("*;q=0, gzip"));
+    }
+}
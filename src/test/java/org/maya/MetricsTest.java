@@ -0,0 +1,42 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+
+@QuarkusTest
+public class MetricsTest {
+
+    @Test
+    public void prometheusEndpointExposesShopMetrics() {
+        long itemId = given().contentType(ContentType.JSON)
+                .body("{\"name\":\"metrics-" + UUID.randomUUID() + "\",\"quantity\":1,\"price\":10.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+        String order = "{\"address\":\"Metrics street 1\",\"items\":[{\"itemId\":" + itemId + ",\"quantity\":1}]}";
+        given().contentType(ContentType.JSON).body(order).when().post("/api/orders").then().statusCode(201);
+        given().contentType(ContentType.JSON).body(order).when().post("/api/orders").then().statusCode(400);
+        given().when().delete("/api/orders/999999").then().statusCode(404);
+        given().contentType(ContentType.JSON).body("[" + order + "]").when().post("/api/orders/batch").then().statusCode(200);
+
+        given().when().get("/q/metrics")
+                .then().statusCode(200)
+                .body(containsString("magazine_orders_total{operation=\"create\",outcome=\"created\"}"))
+                .body(containsString("magazine_orders_total{operation=\"create\",outcome=\"out_of_stock\"}"))
+                .body(containsString("magazine_orders_total{operation=\"delete\",outcome=\"order_not_found\"}"))
+                .body(containsString("magazine_orders_total{operation=\"batch\",outcome=\"out_of_stock\"}"))
+                .body(containsString("magazine_virtual_threads_pinned_total"))
+                .body(containsString("http_server_requests_seconds_bucket{method=\"POST\""))
+                .body(containsString("uri=\"/api/orders\""))
+                .body(containsString("magazine_catalog_items"))
+                .body(containsString("cache=\"magazine.items\""))
+                .body(containsString("hibernate_"))
+                .body(containsString("agroal_"));
+    }
+}
@@ -0,0 +1,79 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * POST /api/orders/batch: у каждого заказа свой статус, остатки распределяются в порядке заказов в пакете.
+ */
+@QuarkusTest
+public class OrderBatchTest {
+
+    @Test
+    public void entriesGetOwnStatusesAndStockIsAllocatedInOrder() {
+        long first = createItem(5);
+        long second = createItem(3);
+        String batch = "[" + String.join(",",
+                order("Batch street 1", "{\"itemId\":" + first + ",\"quantity\":3}"),
+                order("Batch street 2", "{\"itemId\":" + first + ",\"quantity\":3}"),
+                order("Batch street 3", "{\"itemId\":" + first + ",\"quantity\":2},{\"itemId\":" + second + ",\"quantity\":1}"),
+                order("Batch street 4", "null"),
+                order("Batch street 5", "{\"itemId\":" + Long.MAX_VALUE + ",\"quantity\":1}"),
+                order("", "{\"itemId\":" + second + ",\"quantity\":1}")) + "]";
+
+        JsonPath result = given().contentType(ContentType.JSON).body(batch)
+                .when().post("/api/orders/batch")
+                .then().statusCode(200)
+                .extract().jsonPath();
+
+        assertEquals(List.of(201, 400, 201, 400, 404, 400), result.getList("results.status", Integer.class));
+        assertEquals(6, result.getInt("total"));
+        assertEquals(2, result.getInt("created"));
+        assertEquals(4, result.getInt("failed"));
+        assertTrue(result.getString("results[1].error").startsWith("Not enough stock"), "second order runs out of stock");
+        assertEquals("Позиция заказа не может быть пустой", result.getString("results[3].error"));
+
+        // Остаток плюс заказанное в созданных заказах равно начальному остатку
+        Map<Long, Integer> ordered = new HashMap<>();
+        for (int i : List.of(0, 2)) {
+            long id = result.getLong("results[" + i + "].order.id");
+            JsonPath order = given().when().get("/api/orders/" + id)
+                    .then().statusCode(200)
+                    .extract().jsonPath();
+            List<Map<String, Object>> lines = order.getList("items");
+            lines.forEach(line -> ordered.merge(((Number) line.get("itemId")).longValue(), (Integer) line.get("quantity"), Integer::sum));
+        }
+        assertEquals(5, stock(first) + ordered.get(first));
+        assertEquals(3, stock(second) + ordered.get(second));
+        assertEquals(0, stock(first));
+    }
+
+    private static String order(String address, String lines) {
+        return "{\"address\":\"" + address + "\",\"items\":[" + lines + "]}";
+    }
+
+    private static int stock(long item) {
+        return given().when().get("/api/items/" + item)
+                .then().statusCode(200)
+                .extract().jsonPath().getInt("quantity");
+    }
+
+    private static long createItem(int quantity) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"batch-" + UUID.randomUUID() + "\",\"quantity\":" + quantity + ",\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
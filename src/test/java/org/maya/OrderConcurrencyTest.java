@@ -0,0 +1,101 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.maya.CheckoutFixtures.currentStock;
+import static org.maya.CheckoutFixtures.orderedQuantities;
+import static org.maya.CheckoutFixtures.randomOrder;
+
+@QuarkusTest
+public class OrderConcurrencyTest {
+
+    private static final int ITEMS = 5;
+    private static final int INITIAL_STOCK = 500;
+    private static final int ORDERS = 30;
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 400;
+
+    @Test
+    public void concurrentUpdatesAndDeletesConserveStock() throws Exception {
+        List<Long> itemIds = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            itemIds.add(given().contentType(ContentType.JSON)
+                    .body("{\"name\":\"stress-" + UUID.randomUUID() + "\",\"quantity\":" + INITIAL_STOCK + ",\"price\":1.0}")
+                    .when().post("/api/items")
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id"));
+        }
+
+        List<Long> orderIds = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            orderIds.add(given().contentType(ContentType.JSON)
+                    .body(randomOrder(itemIds, "Stress street"))
+                    .when().post("/api/orders")
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id"));
+        }
+
+        Map<Integer, Integer> statuses = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                futures.add(executor.submit(() -> {
+                    Long[] current = orderIds.toArray(new Long[0]);
+                    int roll = current.length == 0 ? 9 : ThreadLocalRandom.current().nextInt(10);
+                    long orderId = current.length == 0 ? -1 : current[ThreadLocalRandom.current().nextInt(current.length)];
+                    int status;
+                    if (roll < 7) {
+                        status = given().contentType(ContentType.JSON).body(randomOrder(itemIds, "Stress street"))
+                                .when().put("/api/orders/" + orderId).statusCode();
+                    } else if (roll < 8) {
+                        status = given().when().delete("/api/orders/" + orderId).statusCode();
+                        if (status == 204) {
+                            orderIds.remove(orderId);
+                        }
+                    } else {
+                        var response = given().contentType(ContentType.JSON).body(randomOrder(itemIds, "Stress street"))
+                                .when().post("/api/orders");
+                        status = response.statusCode();
+                        if (status == 201) {
+                            orderIds.add(response.jsonPath().getLong("id"));
+                        }
+                    }
+                    statuses.merge(status, 1, Integer::sum);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(Set.of(200, 201, 204, 400, 404, 409).containsAll(statuses.keySet()), "Unexpected statuses: " + statuses);
+
+        Map<Long, Integer> stock = currentStock(itemIds);
+        Map<Long, Integer> ordered = orderedQuantities(itemIds);
+        for (Long itemId : itemIds) {
+            assertTrue(stock.get(itemId) >= 0, "Negative stock for item " + itemId);
+            assertEquals(INITIAL_STOCK, stock.get(itemId) + ordered.getOrDefault(itemId, 0),
+                    "Stock plus ordered quantity must be conserved for item " + itemId + " (statuses " + statuses + ")");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Точечные изменения заказа: позиция и адрес меняются без перезаписи остальных позиций,
+ * склад списывается и возвращается так же, как при PUT всего заказа.
+ */
+@QuarkusTest
+public class OrderLineEndpointsTest {
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Test
+    public void lineChangesAdjustStockAndTouchOneRow() {
+        long first = createItem(10);
+        long second = createItem(10);
+        long order = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Line street 1\",\"items\":[{\"itemId\":" + first + ",\"quantity\":2},"
+                        + "{\"itemId\":" + second + ",\"quantity\":1}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        JsonPath updated = given().contentType(ContentType.JSON).body("{\"quantity\":5}")
+                .when().put("/api/orders/" + order + "/items/" + first)
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(0, statistics.getEntityInsertCount());
+        assertEquals(2, statistics.getEntityUpdateCount(), "the changed line and the order totals are updated");
+        assertEquals(6 * 3.0, updated.getDouble("totalAmount"), 1e-9);
+        assertEquals(5, stock(first));
+
+        given().contentType(ContentType.JSON).body("{\"quantity\":11}")
+                .when().put("/api/orders/" + order + "/items/" + first)
+                .then().statusCode(400)
+                .body(containsString("Not enough stock"));
+        assertEquals(5, stock(first));
+
+        given().when().delete("/api/orders/" + order + "/items/" + first)
+                .then().statusCode(200);
+        assertEquals(10, stock(first));
+        given().when().delete("/api/orders/" + order + "/items/" + second)
+                .then().statusCode(400);
+        assertEquals(9, stock(second));
+
+        JsonPath added = given().contentType(ContentType.JSON).body("{\"quantity\":3}")
+                .when().put("/api/orders/" + order + "/items/" + first)
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(2, added.getInt("lineCount"));
+        assertEquals(7, stock(first));
+    }
+
+    @Test
+    public void patchChangesOnlyAddress() {
+        long item = createItem(5);
+        JsonPath created = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Patch street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":1}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath();
+
+        JsonPath patched = given().contentType(ContentType.JSON).body("{\"address\":\"Patch street 2\"}")
+                .when().patch("/api/orders/" + created.getLong("id"))
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals("Patch street 2", patched.getString("address"));
+        assertEquals(created.getLong("version") + 1, patched.getLong("version"));
+        assertEquals(4, stock(item));
+
+        given().contentType(ContentType.JSON).body("{\"address\":\"\"}")
+                .when().patch("/api/orders/" + created.getLong("id"))
+                .then().statusCode(400);
+    }
+
+    private static int stock(long item) {
+        return given().when().get("/api/items/" + item)
+                .then().statusCode(200)
+                .extract().jsonPath().getInt("quantity");
+    }
+
+    private static long createItem(int quantity) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"line-" + UUID.randomUUID() + "\",\"quantity\":" + quantity + ",\"price\":3.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+
+    @Test
+    public void browserPreflightAllowsPatch() {
+        given().header("Origin", "http://localhost:8181")
+                .header("Access-Control-Request-Method", "PATCH")
+                .when().options("/api/orders/1")
+                .then().statusCode(200)
+                .header("Access-Control-Allow-Methods", containsString("PATCH"));
+    }
+}
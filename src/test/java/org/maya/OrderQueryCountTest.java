@@ -0,0 +1,66 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+public class OrderQueryCountTest {
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Test
+    public void orderReadsUseConstantNumberOfStatements() {
+        long itemA = createItem();
+        long itemB = createItem();
+
+        long firstOrder = createOrder(itemA, itemB);
+        long listWithOneOrder = statementsFor("/api/orders");
+        long getWithTwoLines = statementsFor("/api/orders/" + firstOrder);
+
+        long lastOrder = firstOrder;
+        for (int i = 0; i < 5; i++) {
+            lastOrder = createOrder(itemA, itemB);
+        }
+        long listWithSixOrders = statementsFor("/api/orders");
+        long getAfterGrowth = statementsFor("/api/orders/" + lastOrder);
+
+        assertEquals(listWithOneOrder, listWithSixOrders, "GET /api/orders must not issue a query per order");
+        assertEquals(getWithTwoLines, getAfterGrowth, "GET /api/orders/{id} must not issue a query per line");
+        assertEquals(1, listWithSixOrders);
+        assertEquals(1, getAfterGrowth);
+    }
+
+    private long statementsFor(String path) {
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        given().when().get(path).then().statusCode(200);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"qc-" + UUID.randomUUID() + "\",\"quantity\":1000,\"price\":10.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+
+    private long createOrder(long itemA, long itemB) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Test street 1\",\"items\":[{\"itemId\":" + itemA + ",\"quantity\":1},"
+                        + "{\"itemId\":" + itemB + ",\"quantity\":2}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
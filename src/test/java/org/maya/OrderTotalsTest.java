@@ -0,0 +1,77 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Итоги заказа хранятся в заказе, цена позиции фиксируется при заказе и не меняется вслед за ценой товара.
+ */
+@QuarkusTest
+public class OrderTotalsTest {
+
+    @Test
+    public void totalsUsePriceAtPurchaseTime() {
+        String name = "totals-" + UUID.randomUUID();
+        long item = createItem(name, 10.0);
+        long other = createItem("totals-" + UUID.randomUUID(), 1.5);
+
+        JsonPath created = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Totals street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":3}]}")
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath();
+        long orderId = created.getLong("id");
+        assertEquals(30.0, created.getDouble("totalAmount"), 1e-9);
+        assertEquals(1, created.getInt("lineCount"));
+
+        given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":100,\"price\":20.0}")
+                .when().put("/api/items/" + item)
+                .then().statusCode(200);
+
+        // товар, уже бывший в заказе, сохраняет цену покупки; новый берется по текущей цене
+        JsonPath updated = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Totals street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":4},"
+                        + "{\"itemId\":" + other + ",\"quantity\":2}]}")
+                .when().put("/api/orders/" + orderId)
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(43.0, updated.getDouble("totalAmount"), 1e-9);
+        assertEquals(2, updated.getInt("lineCount"));
+        assertEquals(10.0, updated.getDouble("items.find { it.itemId == " + item + " }.price"), 1e-9);
+        assertTrue(updated.getLong("version") > created.getLong("version"));
+
+        // итоги и адрес те же, изменился только состав позиций - версия (и ETag) все равно растет
+        long replaced = given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Totals street 1\",\"items\":[{\"itemId\":" + item + ",\"quantity\":4},"
+                        + "{\"itemId\":" + other + ",\"quantity\":1},{\"itemId\":" + other + ",\"quantity\":1}]}")
+                .when().put("/api/orders/" + orderId)
+                .then().statusCode(200)
+                .extract().jsonPath().getLong("version");
+        assertTrue(replaced > updated.getLong("version"));
+
+        JsonPath summaries = SqlBudget.atMost(1, () -> given().queryParam("after", orderId - 1).queryParam("limit", 1)
+                        .when().get("/api/orders/summary"))
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(orderId, summaries.getLong("orders[0].id"));
+        assertEquals(43.0, summaries.getDouble("orders[0].totalAmount"), 1e-9);
+        assertEquals(2, summaries.getInt("orders[0].lineCount"));
+    }
+
+    private static long createItem(String name, double price) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"" + name + "\",\"quantity\":100,\"price\":" + price + "}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
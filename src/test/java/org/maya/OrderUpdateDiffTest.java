@@ -0,0 +1,71 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Изменение заказа пишет только отличающиеся позиции, а не удаляет и вставляет заново весь заказ.
+ */
+@QuarkusTest
+public class OrderUpdateDiffTest {
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Test
+    public void updateTouchesOnlyChangedLines() {
+        List<Long> items = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            items.add(createItem());
+        }
+        List<Long> lines = new ArrayList<>(items.subList(0, 20));
+        long orderId = given().contentType(ContentType.JSON).body(order(lines, 0))
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+
+        // первая позиция меняет количество, последняя удаляется, добавляется новый товар
+        lines.remove(19);
+        lines.add(items.get(20));
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        JsonPath updated = given().contentType(ContentType.JSON).body(order(lines, lines.get(0)))
+                .when().put("/api/orders/" + orderId)
+                .then().statusCode(200)
+                .extract().jsonPath();
+
+        assertEquals(1, statistics.getEntityInsertCount(), "only the new line is inserted");
+        assertEquals(1, statistics.getEntityDeleteCount(), "only the removed line is deleted");
+        assertEquals(2, statistics.getEntityUpdateCount(), "the changed line and the order totals are updated");
+        assertEquals(20, updated.getInt("lineCount"));
+        assertEquals(21 * 10.0, updated.getDouble("totalAmount"), 1e-9);
+    }
+
+    /** Заказ по одной штуке каждого товара, twice - товар, которого две штуки (0 - нет такого). */
+    private static String order(List<Long> items, long twice) {
+        return "{\"address\":\"Diff street 1\",\"items\":[" + items.stream()
+                .map(id -> "{\"itemId\":" + id + ",\"quantity\":" + (id == twice ? 2 : 1) + "}")
+                .collect(Collectors.joining(",")) + "]}";
+    }
+
+    private static long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"diff-" + UUID.randomUUID() + "\",\"quantity\":100,\"price\":10.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
@@ -0,0 +1,60 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * POST /api/orders и PUT /api/orders/{id} проверяют запрос до транзакции: пустая позиция и количество
+ * меньше 1 дают 400, склад и заказ не меняются.
+ */
+@QuarkusTest
+public class OrderValidationTest {
+
+    @Test
+    public void invalidLinesAreRejectedOnCreateAndUpdate() {
+        long item = createItem();
+        long order = given().contentType(ContentType.JSON).body(order("{\"itemId\":" + item + ",\"quantity\":2}"))
+                .when().post("/api/orders")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+
+        for (String line : List.of("null", "{\"itemId\":" + item + ",\"quantity\":0}", "{\"itemId\":" + item + ",\"quantity\":-3}")) {
+            given().contentType(ContentType.JSON).body(order(line))
+                    .when().post("/api/orders")
+                    .then().statusCode(400);
+            given().contentType(ContentType.JSON).body(order(line))
+                    .when().put("/api/orders/" + order)
+                    .then().statusCode(400);
+        }
+        given().contentType(ContentType.JSON).body(order("null"))
+                .when().post("/api/orders")
+                .then().body("error", equalTo("Позиция заказа не может быть пустой"));
+
+        assertEquals(8, given().when().get("/api/items/" + item)
+                .then().statusCode(200)
+                .extract().jsonPath().getInt("quantity"));
+        given().when().get("/api/orders/" + order)
+                .then().statusCode(200)
+                .body("items[0].quantity", equalTo(2));
+    }
+
+    private static String order(String line) {
+        return "{\"address\":\"Validation street 1\",\"items\":[" + line + "]}";
+    }
+
+    private static long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"validation-" + UUID.randomUUID() + "\",\"quantity\":10,\"price\":1.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
@@ -0,0 +1,60 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class SalesReportTest {
+
+    @Test
+    public void salesAreAggregatedByItemAndDay() {
+        long cheap = createItem(2.5);
+        long expensive = createItem(100.0);
+        order("{\"itemId\":" + cheap + ",\"quantity\":4},{\"itemId\":" + expensive + ",\"quantity\":1}");
+        order("{\"itemId\":" + cheap + ",\"quantity\":2}");
+
+        String today = LocalDate.now().toString();
+        JsonPath byItem = SqlBudget.atMost(1, () -> given().queryParam("from", today).queryParam("to", today)
+                        .when().get("/api/reports/sales"))
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(6, byItem.getInt("rows.find { it.itemId == " + cheap + " }.units"));
+        assertEquals(15.0, byItem.getDouble("rows.find { it.itemId == " + cheap + " }.revenue"), 1e-9);
+        assertEquals(2, byItem.getInt("rows.find { it.itemId == " + cheap + " }.orders"));
+        assertEquals(100.0, byItem.getDouble("rows.find { it.itemId == " + expensive + " }.revenue"), 1e-9);
+
+        JsonPath byDay = given().queryParam("from", today).queryParam("groupBy", "day")
+                .when().get("/api/reports/sales")
+                .then().statusCode(200)
+                .extract().jsonPath();
+        assertEquals(today, byDay.getString("rows[0].day"));
+        assertTrue(byDay.getDouble("totalRevenue") >= 115.0);
+
+        given().queryParam("groupBy", "week").when().get("/api/reports/sales").then().statusCode(400);
+        given().queryParam("from", today).queryParam("to", "2000-01-01").when().get("/api/reports/sales").then().statusCode(400);
+    }
+
+    private static long createItem(double price) {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"report-" + UUID.randomUUID() + "\",\"quantity\":100,\"price\":" + price + "}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+
+    private static void order(String lines) {
+        given().contentType(ContentType.JSON)
+                .body("{\"address\":\"Report street 1\",\"items\":[" + lines + "]}")
+                .when().post("/api/orders")
+                .then().statusCode(201);
+    }
+}
@@ -0,0 +1,38 @@
+package org.maya;
+
+import io.restassured.response.Response;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка SQL-бюджета вызова по заголовкам X-SQL-* (включены в профиле test):
+ * <pre>
+ * SqlBudget.atMost(1, () -> given().get("/api/orders")).then().statusCode(200);
+ * </pre>
+ * Выборки блока id из последовательности (X-SQL-Id-Fetches) в бюджет не входят: они случаются раз на
+ * allocationSize вставок, и то, на какой запрос выпадут, зависит от тестов, выполненных раньше.
+ */
+public final class SqlBudget {
+
+    private SqlBudget() {
+    }
+
+    public static Response atMost(int maxStatements, Supplier<Response> call) {
+        Response response = call.get();
+        String statements = response.getHeader("X-SQL-Statements");
+        assertNotNull(statements, "X-SQL-Statements header is missing - is magazine.sql.budget.headers enabled?");
+        int count = Integer.parseInt(statements) - Integer.parseInt(response.getHeader("X-SQL-Id-Fetches"));
+        assertTrue(count <= maxStatements, () -> String.format(
+                "SQL budget exceeded: %d statements without id fetches (budget %d), %s batches, %s ms in JDBC, %s entities loaded",
+                count, maxStatements, response.getHeader("X-SQL-Batches"),
+                response.getHeader("X-SQL-Time-Ms"), response.getHeader("X-SQL-Entities")));
+        return response;
+    }
+
+    public static int statements(Response response) {
+        return Integer.parseInt(response.getHeader("X-SQL-Statements"));
+    }
+}
@@ -0,0 +1,64 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Бюджеты SQL-выражений основных эндпоинтов не зависят от числа позиций заказа.
+ * Батч списания остатков (StockUpdater) - одно выражение в бюджете.
+ */
+@QuarkusTest
+public class SqlBudgetTest {
+
+    @Test
+    public void orderEndpointsStayWithinStatementBudget() {
+        List<Long> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(createItem());
+        }
+
+        for (List<Long> lines : List.of(items.subList(0, 1), items)) {
+            long orderId = SqlBudget.atMost(5, () -> given().contentType(ContentType.JSON).body(order(lines, 1))
+                            .when().post("/api/orders"))
+                    .then().statusCode(201)
+                    .extract().jsonPath().getLong("id");
+            SqlBudget.atMost(1, () -> given().when().get("/api/orders")).then().statusCode(200);
+            SqlBudget.atMost(1, () -> given().when().get("/api/orders/" + orderId)).then().statusCode(200);
+            SqlBudget.atMost(6, () -> given().contentType(ContentType.JSON).body(order(lines, 2))
+                    .when().put("/api/orders/" + orderId)).then().statusCode(200);
+            SqlBudget.atMost(5, () -> given().when().delete("/api/orders/" + orderId)).then().statusCode(204);
+        }
+    }
+
+    @Test
+    public void catalogReadsStayWithinStatementBudget() {
+        long itemId = createItem();
+        SqlBudget.atMost(1, () -> given().queryParam("limit", 100).when().get("/api/items")).then().statusCode(200);
+        SqlBudget.atMost(1, () -> given().when().get("/api/items/" + itemId)).then().statusCode(200);
+        // повторное чтение обслуживается кэшем каталога
+        assertEquals(0, SqlBudget.statements(given().when().get("/api/items/" + itemId)));
+    }
+
+    private static long createItem() {
+        return given().contentType(ContentType.JSON)
+                .body("{\"name\":\"budget-" + UUID.randomUUID() + "\",\"quantity\":1000,\"price\":10.0}")
+                .when().post("/api/items")
+                .then().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+
+    private static String order(List<Long> itemIds, int quantity) {
+        return itemIds.stream()
+                .map(id -> "{\"itemId\":" + id + ",\"quantity\":" + quantity + "}")
+                .collect(Collectors.joining(",", "{\"address\":\"Budget street 1\",\"items\":[", "]}"));
+    }
+}
@@ -0,0 +1,61 @@
+package org.maya;
+
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.junit.jupiter.api.Test;
+import org.maya.service.TransactionRetry;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Классификация ошибок для повторов транзакций: повторяются только конфликты, в том числе завернутые в другие исключения.
+ */
+public class TransactionRetryTest {
+
+    @Test
+    public void conflictsAreTransient() {
+        assertTrue(TransactionRetry.isTransient(new OptimisticLockException("stale")));
+        assertTrue(TransactionRetry.isTransient(new StaleObjectStateException("Item", 1L)));
+        assertTrue(TransactionRetry.isTransient(new LockTimeoutException("lock timeout")));
+        assertTrue(TransactionRetry.isTransient(new LockAcquisitionException("deadlock", new SQLException("deadlock", "40P01"))));
+        assertTrue(TransactionRetry.isTransient(new SQLException("serialization failure", "40001")));
+        assertTrue(TransactionRetry.isTransient(new SQLException("deadlock", "40P01")));
+        assertTrue(TransactionRetry.isTransient(new SQLException("lock timeout", "HYT00")));
+    }
+
+    @Test
+    public void wrappedConflictsAreTransient() {
+        Exception wrapped = new IllegalStateException("commit failed",
+                new PersistenceException("flush failed", new SQLException("timeout", "HYT00")));
+        assertTrue(TransactionRetry.isTransient(wrapped));
+        assertTrue(TransactionRetry.isTransient(new RuntimeException(new OptimisticLockException("stale"))));
+    }
+
+    @Test
+    public void otherFailuresAreNotTransient() {
+        assertFalse(TransactionRetry.isTransient(new IllegalStateException("bug")));
+        assertFalse(TransactionRetry.isTransient(new SQLException("syntax error", "42000")));
+        assertFalse(TransactionRetry.isTransient(new SQLException("no state")));
+        assertFalse(TransactionRetry.isTransient(uniqueViolation()));
+        assertFalse(TransactionRetry.isTransient(null));
+    }
+
+    @Test
+    public void constraintViolationsAreRecognizedThroughWrappers() {
+        assertTrue(TransactionRetry.isConstraintViolation(uniqueViolation()));
+        assertTrue(TransactionRetry.isConstraintViolation(new PersistenceException("flush failed", uniqueViolation())));
+        assertFalse(TransactionRetry.isConstraintViolation(new OptimisticLockException("stale")));
+        assertFalse(TransactionRetry.isConstraintViolation(new SQLException("unique", "23505")));
+    }
+
+    private static ConstraintViolationException uniqueViolation() {
+        return new ConstraintViolationException("duplicate name", new SQLException("unique", "23505"), "uk_items_name");
+    }
+}
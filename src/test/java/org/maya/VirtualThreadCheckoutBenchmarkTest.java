@@ -0,0 +1,27 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Эндпоинты на виртуальных потоках, закрепления фиксируются от 1 мс. Запуск: mvn test -Dbenchmark=true -Dtest='*CheckoutBenchmarkTest'
+ */
+@QuarkusTest
+@TestProfile(VirtualThreadCheckoutBenchmarkTest.VirtualThreads.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class VirtualThreadCheckoutBenchmarkTest extends CheckoutLoadBenchmark {
+
+    public static class VirtualThreads extends BenchmarkProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            Map<String, String> overrides = new HashMap<>(super.getConfigOverrides());
+            overrides.put("quarkus.virtual-threads.enabled", "true");
+            overrides.put("magazine.diagnostics.pinning.threshold", "1ms");
+            return overrides;
+        }
+    }
+}
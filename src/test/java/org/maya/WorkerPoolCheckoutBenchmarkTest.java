@@ -0,0 +1,26 @@
+package org.maya;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Эндпоинты в пуле worker-потоков. Запуск: mvn test -Dbenchmark=true -Dtest='*CheckoutBenchmarkTest'
+ */
+@QuarkusTest
+@TestProfile(WorkerPoolCheckoutBenchmarkTest.WorkerPool.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class WorkerPoolCheckoutBenchmarkTest extends CheckoutLoadBenchmark {
+
+    public static class WorkerPool extends BenchmarkProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            Map<String, String> overrides = new HashMap<>(super.getConfigOverrides());
+            overrides.put("quarkus.virtual-threads.enabled", "false");
+            return overrides;
+        }
+    }
+}